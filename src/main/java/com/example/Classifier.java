@@ -1,27 +1,67 @@
 package com.example;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import com.example.FeatureVector.FEATURE;
 import com.example.FeatureVector.METRIC;
 
 public class Classifier {
 
+    public enum INDEX {
+        LINEAR,
+        VP_TREE,
+        HNSW
+    }
+
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    // A block of training rows should stay in L1/L2 cache while a whole
+    // block of queries is scored against it.
+    private static final int QUERY_BLOCK_SIZE = 64;
+    private static final int TRAINING_BLOCK_SIZE = 1024;
+
+    // How often the classifying thread reports the progress of the workers.
+    private static final long PROGRESS_INTERVAL_MILLIS = 200;
+
     private int K;
 
-    private List<FeatureVector> trainingVectors;
     private List<FeatureVector> testingVectors;
 
+    private FeatureStore trainingStore;
+    private FeatureStore testingStore;
+
     private int westGermanPoliticianMaxCount;
     private float canadianCityMaxFreq;
 
     private short featureFlags;
     private List<Article.LABEL> labels;
     private METRIC metric;
+    private DistanceKernel kernel;
+
+    private INDEX index = INDEX.LINEAR;
+    private VantagePointTree tree;
+    private HnswIndex hnsw;
+    private DistanceMatrix distanceMatrix;
+    private long distanceEvaluations;
+
+    private int hnswM = 16;
+    private int hnswEfConstruction = 200;
+    private int hnswEfSearch = 64;
+
+    private float recall;
+    private float indexQueriesPerSecond;
+    private float linearQueriesPerSecond;
 
     private Map<Article.LABEL, Map<Article.LABEL, Integer>> confusionMatrix;
 
@@ -35,11 +75,36 @@ public class Classifier {
         short featureFlags,
         METRIC metric
     ) {
-        assert(trainingVectors.size() > K);
+        this(
+            K,
+            new FeatureStore(trainingVectors),
+            testingVectors,
+            westGermanPoliticianMaxCount,
+            canadianCityMaxFreq,
+            disabledLabels,
+            featureFlags,
+            metric
+        );
+    }
+
+    // The training set may be any store, e.g. a MappedFeatureStore; only
+    // its rows and their labels are read.
+    public Classifier(
+        int K,
+        FeatureStore trainingStore,
+        List<FeatureVector> testingVectors,
+        int westGermanPoliticianMaxCount,
+        float canadianCityMaxFreq,
+        List<Article.LABEL> disabledLabels,
+        short featureFlags,
+        METRIC metric
+    ) {
+        assert(trainingStore.getSize() > K);
 
         this.K = K;
-        this.trainingVectors = trainingVectors;
         this.testingVectors = testingVectors;
+        this.trainingStore = trainingStore;
+        this.testingStore = this.trainingStore.encode(testingVectors);
         this.westGermanPoliticianMaxCount = westGermanPoliticianMaxCount;
         this.canadianCityMaxFreq = canadianCityMaxFreq;
         this.labels = new ArrayList<Article.LABEL>();
@@ -50,7 +115,41 @@ public class Classifier {
         }
         this.featureFlags = featureFlags;
         this.metric = metric;
+        // The first capitalized word distances between the most common words
+        // are tabled once; the rest are still computed on the fly.
+        GramsTable gramsTable = null;
+        if ((featureFlags & FEATURE.FIRST_CAPITALIZED_WORD.id) != 0) {
+            gramsTable = new GramsTable(
+                List.of(this.trainingStore, this.testingStore)
+            );
+        }
+        this.kernel = DistanceKernel.compile(
+            featureFlags,
+            metric,
+            westGermanPoliticianMaxCount,
+            canadianCityMaxFreq,
+            gramsTable,
+            this.trainingStore.getExtractors()
+        );
+
+        resetConfusionMatrix();
+    }
+
+    // Starts over with another number of neighbours, e.g. to read the
+    // distances precomputed by precomputeDistances() again.
+    public void setK(int K) {
+        assert(trainingStore.getSize() > K);
 
+        this.K = K;
+        this.distanceEvaluations = 0;
+        resetConfusionMatrix();
+    }
+
+    public int getK() {
+        return this.K;
+    }
+
+    private void resetConfusionMatrix() {
         this.confusionMatrix = new HashMap<>(this.labels.size());
         for (Article.LABEL label : this.labels) {
             this.confusionMatrix.put(label, new HashMap<>(this.labels.size()));
@@ -60,73 +159,381 @@ public class Classifier {
         }
     }
 
+    // Computes the distances between every testing and training vector up
+    // front. clasify() then only selects the neighbours, whatever K is.
+    public DistanceMatrix precomputeDistances(int threads) {
+        this.distanceMatrix = new DistanceMatrix(
+            this.testingStore, this.trainingStore, this.kernel, threads
+        );
+
+        return this.distanceMatrix;
+    }
+
+    // Used by the HNSW index built by the next setIndex() call.
+    public void setHnswParameters(int M, int efConstruction, int efSearch) {
+        assert(M > 1 && efConstruction > 0 && efSearch > 0);
+
+        this.hnswM = M;
+        this.hnswEfConstruction = efConstruction;
+        this.hnswEfSearch = efSearch;
+    }
+
+    // The vantage-point tree is exact, so the classification does not
+    // change, but it only applies when the distance is a true metric;
+    // otherwise the linear scan is kept. The HNSW index is approximate, see
+    // evaluateIndex().
+    public void setIndex(INDEX index) {
+        this.index = INDEX.LINEAR;
+        this.tree = null;
+        this.hnsw = null;
+
+        if (index == INDEX.HNSW) {
+            this.index = INDEX.HNSW;
+            this.hnsw = new HnswIndex(
+                this.trainingStore,
+                this.kernel,
+                this.hnswM,
+                this.hnswEfConstruction,
+                this.hnswEfSearch
+            );
+        } else if (index == INDEX.VP_TREE) {
+            VantagePointTree tree
+                = new VantagePointTree(this.trainingStore, this.kernel);
+            if (tree.isMetric()) {
+                this.index = INDEX.VP_TREE;
+                this.tree = tree;
+            }
+        }
+    }
+
+    public INDEX getIndex() {
+        return this.index;
+    }
+
+    // Compares the neighbours found with the current index to the exact ones
+    // found by the linear scan, for every testing vector. A neighbour found
+    // counts as exact if it is no farther than the exact K-th one, so that
+    // another of several rows at the same distance is not a miss. The
+    // results are read with getRecall() and the get*QueriesPerSecond()
+    // methods.
+    public void evaluateIndex() {
+        int testingSize = this.testingStore.getSize();
+        NeighbourHeap[] heaps = newHeaps();
+        float[] exact = new float[QUERY_BLOCK_SIZE];
+        int[] neighbours = new int[K];
+        float[] distances = new float[K];
+
+        long found = 0;
+        long indexTime = 0;
+        long linearTime = 0;
+
+        for (int from = 0; from < testingSize; from += QUERY_BLOCK_SIZE) {
+            int to = Math.min(from + QUERY_BLOCK_SIZE, testingSize);
+
+            long start = System.nanoTime();
+            searchLinear(this.testingStore, from, to, heaps);
+            linearTime += System.nanoTime() - start;
+
+            for (int q = from; q < to; ++q) {
+                exact[q - from] = heaps[q - from].getWorstDistance();
+            }
+
+            start = System.nanoTime();
+            search(this.testingStore, from, to, heaps);
+            indexTime += System.nanoTime() - start;
+
+            for (int q = from; q < to; ++q) {
+                int count = heaps[q - from].drainSorted(neighbours, distances);
+                for (int i = 0; i < count; ++i) {
+                    if (distances[i]
+                        <= exact[q - from] + VantagePointTree.SLACK) {
+
+                        ++found;
+                    }
+                }
+            }
+        }
+
+        this.recall = (float)found / (float)((long)K * testingSize);
+        this.indexQueriesPerSecond = testingSize * 1e9f / indexTime;
+        this.linearQueriesPerSecond = testingSize * 1e9f / linearTime;
+    }
+
+    // Recall@K, the fraction of the exact K nearest neighbours found.
+    public float getRecall() {
+        return this.recall;
+    }
+
+    public float getIndexQueriesPerSecond() {
+        return this.indexQueriesPerSecond;
+    }
+
+    public float getLinearQueriesPerSecond() {
+        return this.linearQueriesPerSecond;
+    }
+
+    public float getMeanDistanceEvaluations() {
+        return (float)this.distanceEvaluations
+            / (float)testingVectors.size();
+    }
+
     public void clasify() {
-        int n = 0;
+        clasify(1);
+    }
+
+    public void clasify(int threads) {
+        assert(threads > 0);
+
         int testingSize = testingVectors.size();
+        AtomicInteger progress = new AtomicInteger();
+
+        if (threads == 1) {
+            Worker worker = new Worker(progress);
+            for (int block = 0;
+                block < testingSize;
+                block += QUERY_BLOCK_SIZE
+            ) {
+                worker.classify(
+                    block, Math.min(block + QUERY_BLOCK_SIZE, testingSize)
+                );
+                printProgress(progress.get(), testingSize);
+            }
+            mergeConfusionMatrix(worker.counts);
+            this.distanceEvaluations += worker.distanceEvaluations;
+            return;
+        }
 
-        for (FeatureVector vec : testingVectors) {
-            System.out.print("\r" + (n+1) + " of " + testingSize);
-            ++n;
-
-            Collections.sort(
-                trainingVectors,
-                new FeatureVector.DistanceComparator(
-                    vec,
-                    westGermanPoliticianMaxCount,
-                    canadianCityMaxFreq,
-                    featureFlags,
-                    metric
-                )
-            );
+        int chunkCount = Math.min(testingSize, threads * CHUNKS_PER_THREAD);
+        List<Worker> workers = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; ++i) {
+            workers.add(new Worker(progress));
+        }
 
-            assert(trainingVectors
-                    .getFirst()
-                    .getDistance(
-                        vec,
-                        westGermanPoliticianMaxCount,
-                        canadianCityMaxFreq,
-                        featureFlags,
-                        metric
-                    )
-                > trainingVectors
-                    .getLast()
-                    .getDistance(
-                        vec,
-                        westGermanPoliticianMaxCount,
-                        canadianCityMaxFreq,
-                        featureFlags,
-                        metric
-                    )
+        // The workers only count the queries done; this thread prints them,
+        // so that they do not contend for the console.
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            ForkJoinTask<?> task = pool.submit(() -> IntStream
+                .range(0, chunkCount)
+                .parallel()
+                .forEach(c -> workers.get(c).classify(
+                    (int)((long)testingSize * c / chunkCount),
+                    (int)((long)testingSize * (c + 1) / chunkCount)
+                ))
             );
+            while (true) {
+                try {
+                    task.get(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    printProgress(progress.get(), testingSize);
+                }
+            }
+            printProgress(progress.get(), testingSize);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        for (Worker worker : workers) {
+            mergeConfusionMatrix(worker.counts);
+            this.distanceEvaluations += worker.distanceEvaluations;
+        }
+    }
+
+    private static void printProgress(int done, int total) {
+        System.out.print("\r" + done + " of " + total);
+    }
+
+    private void mergeConfusionMatrix(int[][] counts) {
+        for (Article.LABEL actual : this.labels) {
+            Map<Article.LABEL, Integer> row = this.confusionMatrix.get(actual);
+            for (Article.LABEL assigned : this.labels) {
+                row.put(
+                    assigned,
+                    row.get(assigned)
+                        + counts[actual.ordinal()][assigned.ordinal()]
+                );
+            }
+        }
+    }
+
+    public Pair<List<Article.LABEL>, int[][]> classifyBatch(
+        List<FeatureVector> queries
+    ) {
+        FeatureStore queryStore = this.trainingStore.encode(queries);
+        int querySize = queryStore.getSize();
+
+        NeighbourHeap[] heaps = newHeaps();
+        List<Article.LABEL> labels = new ArrayList<>(querySize);
+        int[][] neighbours = new int[querySize][K];
+
+        for (int from = 0; from < querySize; from += QUERY_BLOCK_SIZE) {
+            int to = Math.min(from + QUERY_BLOCK_SIZE, querySize);
+            search(queryStore, from, to, heaps);
+
+            for (int q = from; q < to; ++q) {
+                heaps[q - from].drainSorted(neighbours[q], null);
+                labels.add(vote(neighbours[q]));
+            }
+        }
+
+        return new Pair<>(labels, neighbours);
+    }
+
+    private NeighbourHeap[] newHeaps() {
+        NeighbourHeap[] heaps = new NeighbourHeap[QUERY_BLOCK_SIZE];
+        for (int i = 0; i < heaps.length; ++i) {
+            heaps[i] = new NeighbourHeap(K);
+        }
+
+        return heaps;
+    }
+
+    // Finds the nearest training rows of the queries from..to-1 with the
+    // precomputed distances or the current index. Returns the number of
+    // distances evaluated.
+    private long search(
+        FeatureStore queries,
+        int from,
+        int to,
+        NeighbourHeap[] heaps
+    ) {
+        if (this.distanceMatrix != null && queries == this.testingStore) {
+            for (int q = from; q < to; ++q) {
+                heaps[q - from].clear();
+                this.distanceMatrix.offerAll(q, heaps[q - from]);
+            }
+
+            return 0;
+        }
+
+        if (this.tree == null && this.hnsw == null) {
+            return searchLinear(queries, from, to, heaps);
+        }
+
+        long evaluations = 0;
+        for (int q = from; q < to; ++q) {
+            NeighbourHeap heap = heaps[q - from];
+            heap.clear();
 
-            Map<Article.LABEL, Integer> labelCounts
-                = new HashMap<>(this.labels.size());
-            for (Article.LABEL label : this.labels) {
-                labelCounts.put(label, 0);
+            if (this.tree != null) {
+                evaluations += this.tree.search(queries, q, heap);
+            } else {
+                evaluations += this.hnsw.search(queries, q, heap);
             }
+        }
+
+        return evaluations;
+    }
+
+    // Walks the training store block by block. Every heap still sees the
+    // training rows in increasing order, so the result is the same as for a
+    // plain scan.
+    private long searchLinear(
+        FeatureStore queries,
+        int from,
+        int to,
+        NeighbourHeap[] heaps
+    ) {
+        for (int q = from; q < to; ++q) {
+            heaps[q - from].clear();
+        }
 
-            for (int i = 0; i < K; ++i) {
-                Article.LABEL nLabel
-                    = trainingVectors.get(i).getLabel().orElseThrow();
-                labelCounts.put(nLabel, labelCounts.get(nLabel) + 1);
+        int trainingSize = this.trainingStore.getSize();
+        for (int block = 0;
+            block < trainingSize;
+            block += TRAINING_BLOCK_SIZE
+        ) {
+            int blockEnd = Math.min(block + TRAINING_BLOCK_SIZE, trainingSize);
+
+            for (int q = from; q < to; ++q) {
+                NeighbourHeap heap = heaps[q - from];
+
+                for (int i = block; i < blockEnd; ++i) {
+                    heap.offer(
+                        i,
+                        this.kernel.getDistance(
+                            queries,
+                            q,
+                            this.trainingStore,
+                            i,
+                            heap.getWorstDistance()
+                        )
+                    );
+                }
             }
+        }
+
+        return (long)(to - from) * trainingSize;
+    }
+
+    // Holds the per-thread scratch buffers and a private confusion matrix, so
+    // the training set is only ever read while classifying.
+    private class Worker {
+
+        private NeighbourHeap[] heaps = newHeaps();
+        private int[] neighbours = new int[K];
 
-            Article.LABEL label
-                = trainingVectors.getFirst().getLabel().orElseThrow();
-            int most_frequent = 0;
-            for (Entry<Article.LABEL, Integer> e : labelCounts.entrySet()) {
-                if (e.getValue() > most_frequent) {
-                    most_frequent = e.getValue();
-                    label = e.getKey();
+        private int[][] counts = new int
+            [Article.LABEL.values().length][Article.LABEL.values().length];
+
+        private long distanceEvaluations;
+
+        private AtomicInteger progress;
+
+        public Worker(AtomicInteger progress) {
+            this.progress = progress;
+        }
+
+        public void classify(int from, int to) {
+            for (int block = from; block < to; block += QUERY_BLOCK_SIZE) {
+                int blockEnd = Math.min(block + QUERY_BLOCK_SIZE, to);
+                distanceEvaluations
+                    += search(testingStore, block, blockEnd, heaps);
+
+                for (int t = block; t < blockEnd; ++t) {
+                    heaps[t - block].drainSorted(neighbours, null);
+
+                    Article.LABEL label = vote(neighbours);
+                    Article.LABEL actualLabel
+                        = testingVectors.get(t).getLabel().orElseThrow();
+
+                    ++counts[actualLabel.ordinal()][label.ordinal()];
                 }
+                progress.addAndGet(blockEnd - block);
             }
-            assert(most_frequent > 0);
+        }
+    }
+
+    private Article.LABEL vote(int[] neighbours) {
+        Map<Article.LABEL, Integer> labelCounts
+            = new HashMap<>(this.labels.size());
+        for (Article.LABEL label : this.labels) {
+            labelCounts.put(label, 0);
+        }
 
-            Article.LABEL actualLabel = vec.getLabel().orElseThrow();
+        for (int i = 0; i < K; ++i) {
+            Article.LABEL nLabel
+                = this.trainingStore.getLabel(neighbours[i]);
+            labelCounts.put(nLabel, labelCounts.get(nLabel) + 1);
+        }
 
-            int count = this.confusionMatrix.get(actualLabel).get(label);
-            this.confusionMatrix.get(actualLabel).put(label, count + 1);
+        Article.LABEL label = this.trainingStore.getLabel(neighbours[0]);
+        int most_frequent = 0;
+        for (Entry<Article.LABEL, Integer> e : labelCounts.entrySet()) {
+            if (e.getValue() > most_frequent) {
+                most_frequent = e.getValue();
+                label = e.getKey();
+            }
         }
+        assert(most_frequent > 0);
+
+        return label;
     }
 
     public float getSensitivity(Article.LABEL label) {
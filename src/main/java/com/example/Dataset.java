@@ -21,13 +21,44 @@ public class Dataset {
     public static Dataset loadFromSGMLFile(
         String filename,
         List<Article.LABEL> ignoredLabels
+    ) throws ParserConfigurationException, SAXException, IOException {
+        return parse(filename, new DatasetHandler(ignoredLabels));
+    }
+
+    // Leaves out the first skipped[label.ordinal()] articles of each label,
+    // e.g. the training split a saved model was featurized from, without
+    // keeping their text.
+    public static Dataset loadFromSGMLFile(
+        String filename,
+        List<Article.LABEL> ignoredLabels,
+        int[] skipped
+    ) throws ParserConfigurationException, SAXException, IOException {
+        return parse(
+            filename, new DatasetHandler(ignoredLabels, skipped, false)
+        );
+    }
+
+    // Every article of the file, to be classified. The ones without a
+    // single supported label get a null label.
+    public static Dataset loadQueriesFromSGMLFile(
+        String filename
+    ) throws ParserConfigurationException, SAXException, IOException {
+        return parse(
+            filename,
+            new DatasetHandler(
+                List.of(), new int[Article.LABEL.values().length], true
+            )
+        );
+    }
+
+    private static Dataset parse(
+        String filename,
+        DatasetHandler datasetHandler
     ) throws ParserConfigurationException, SAXException, IOException {
         SAXParserFactory factory = SAXParserFactory.newInstance();
         factory.setValidating(false);
 
         SAXParser parser = factory.newSAXParser();
-        DatasetHandler datasetHandler = new DatasetHandler(ignoredLabels);
-
         parser.parse(filename, datasetHandler);
         return datasetHandler.getDataset();
     }
@@ -9,6 +9,7 @@ import org.xml.sax.helpers.DefaultHandler;
 
 public class DatasetHandler extends DefaultHandler {
 
+    private static final String REUTERS = "REUTERS";
     private static final String PLACES = "PLACES";
     private static final String TITLE = "TITLE";
     private static final String BODY = "BODY";
@@ -25,8 +26,27 @@ public class DatasetHandler extends DefaultHandler {
     private List<Article.LABEL> ignoredLabels;
     private String content;
 
+    // How many more articles of each label, by its ordinal, are left out,
+    // and whether the current article is one of them.
+    private int[] skipped;
+    private boolean skipping;
+    private boolean keepUnlabeled;
+
     public DatasetHandler(List<Article.LABEL> ignoredLabels) {
+        this(ignoredLabels, new int[Article.LABEL.values().length], false);
+    }
+
+    // Leaves out the first skipped[label.ordinal()] articles of each label,
+    // without keeping their text. With keepUnlabeled, the articles with no
+    // supported label, or several, are kept too, with a null label.
+    public DatasetHandler(
+        List<Article.LABEL> ignoredLabels,
+        int[] skipped,
+        boolean keepUnlabeled
+    ) {
         this.ignoredLabels = ignoredLabels;
+        this.skipped = skipped.clone();
+        this.keepUnlabeled = keepUnlabeled;
     }
 
     @Override
@@ -35,6 +55,10 @@ public class DatasetHandler extends DefaultHandler {
         int start,
         int length
     ) throws SAXException {
+        if (skipping) {
+            return;
+        }
+
         if (elementValue == null) {
             elementValue = new StringBuilder();
         } else {
@@ -56,6 +80,12 @@ public class DatasetHandler extends DefaultHandler {
         Attributes attr
     ) throws SAXException {
         switch (qName) {
+            case REUTERS:
+                this.title = "";
+                this.labels = new ArrayList<>();
+                containsUnsupportedLabels = false;
+                skipping = false;
+                break;
             case PLACES:
                 this.labels = new ArrayList<>();
                 inPlaces = true;
@@ -85,6 +115,9 @@ public class DatasetHandler extends DefaultHandler {
         switch (qName) {
             case PLACES:
                 inPlaces = false;
+                skipping = labels.size() == 1
+                    && !containsUnsupportedLabels
+                    && skipped[labels.get(0).ordinal()] > 0;
                 break;
             case D:
                 if (inPlaces) {
@@ -107,12 +140,20 @@ public class DatasetHandler extends DefaultHandler {
                 this.content = elementValue.toString();
 
                 if (labels.size() == 1 && !containsUnsupportedLabels) {
+                    Article.LABEL label = this.labels.get(0);
+                    if (skipped[label.ordinal()] > 0) {
+                        --skipped[label.ordinal()];
+                    } else {
+                        dataset.addArticle(
+                            new Article(this.title, label, this.content)
+                        );
+                    }
+                } else if (keepUnlabeled) {
                     dataset.addArticle(
-                        new Article(
-                            this.title, this.labels.get(0), this.content
-                        )
+                        new Article(this.title, null, this.content)
                     );
                 }
+                skipping = false;
 
                 break;
         }
@@ -2,18 +2,68 @@ package com.example;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+// The gazetteers of dictionary.json, tokenized, stemmed and compiled into a
+// TokenTrie. writeCompiled() saves them compiled, in a little-endian file
+// loadCompiled() maps without parsing, tokenizing or stemming anything:
+//
+//   header, HEADER_SIZE bytes: MAGIC, VERSION, the number of categories
+//     and the offset of the trie
+//   the JSON keys of every category, the outer and then the inner one, each
+//     an int length and UTF-8 bytes
+//   the trie at the next multiple of 8, see TokenTrie.write()
+//
+// The categories are not fixed: every pair of outer and inner JSON keys,
+// such as "O" and "france" for the French banks, is one, with the id
+// getCategory() returns. They are all compiled into one set each of the
+// same trie, so that more categories make no more passes over the tokens.
 public class Dictionary {
 
-    private Map<String, Map<String, List<List<Token>>>> data;
+    public static final int MAGIC = 0x4B4A4443;
+    public static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 16;
+
+    // The outer JSON keys FeatureVector looks up, with the countries as
+    // inner keys.
+    public static final String POLITICIANS = "P";
+    public static final String CITIES = "W";
+    public static final String BANKS = "O";
+    public static final String COMPANIES = "C";
+    public static final String STATES = "H";
+    public static final String CAPITALS = "s";
+    public static final String CURRENCIES = "m";
+
+    // The entries of category i are set i of the trie. categories holds the
+    // id of each pair of JSON keys, and countryCategories those of each
+    // outer key by the ordinal of the country of the inner key, or -1.
+    private TokenTrie gazetteer;
+    private Map<String, Map<String, Integer>> categories;
+    private Map<String, int[]> countryCategories;
+
+    // The tries of only some of the categories, by the categories, built
+    // as scan() is first asked for them.
+    private final Map<BitSet, TokenTrie> selections = new ConcurrentHashMap<>();
 
     @SuppressWarnings("unchecked")
     public Dictionary(File file) throws IOException {
@@ -27,107 +77,406 @@ public class Dictionary {
         this.parseJSON(new ObjectMapper().readValue(json, Map.class));
     }
 
+    private Dictionary(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a compiled dictionary file");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException(
+                "Unsupported compiled dictionary version: " + version
+            );
+        }
+
+        int categoryCount = buffer.getInt(8);
+        List<String[]> keys = new ArrayList<>(categoryCount);
+        int at = HEADER_SIZE;
+        for (int c = 0; c < categoryCount; ++c) {
+            String[] pair = new String[2];
+            for (int k = 0; k < pair.length; ++k) {
+                int length = buffer.getInt(at);
+                byte[] bytes = new byte[length];
+                buffer.get(at + Integer.BYTES, bytes);
+                pair[k] = new String(bytes, StandardCharsets.UTF_8);
+                at += Integer.BYTES + length;
+            }
+            keys.add(pair);
+        }
+
+        this.gazetteer = new TokenTrie(buffer, buffer.getInt(12));
+        if (this.gazetteer.getSetCount() != categoryCount) {
+            throw new IOException("Corrupt compiled dictionary file");
+        }
+        indexCategories(keys);
+    }
+
+    // Maps a file saved with writeCompiled().
+    public static Dictionary loadCompiled(File file) throws IOException {
+        try (
+            FileChannel channel = FileChannel.open(
+                file.toPath(), StandardOpenOption.READ
+            )
+        ) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(
+                    "Compiled dictionary too large to be mapped: " + file
+                );
+            }
+
+            return new Dictionary(
+                channel
+                    .map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN)
+            );
+        }
+    }
+
+    // Loads `file` whether it is compiled or JSON.
+    public static Dictionary load(File file) throws IOException {
+        byte[] magic;
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            magic = in.readNBytes(Integer.BYTES);
+        }
+
+        if (magic.length == Integer.BYTES
+            && ByteBuffer.wrap(magic).order(ByteOrder.LITTLE_ENDIAN).getInt()
+                == MAGIC) {
+
+            return loadCompiled(file);
+        }
+
+        return new Dictionary(file);
+    }
+
+    // Saves the dictionary in the layout described above.
+    public void writeCompiled(File file) throws IOException {
+        String[][] keys = new String[this.gazetteer.getSetCount()][];
+        for (String outer_key : this.categories.keySet()) {
+            for (String inner_key : this.categories.get(outer_key).keySet()) {
+                int category = this.categories.get(outer_key).get(inner_key);
+                keys[category] = new String[] { outer_key, inner_key };
+            }
+        }
+
+        List<byte[]> strings = new ArrayList<>();
+        int trieAt = HEADER_SIZE;
+        for (String[] pair : keys) {
+            for (String key : pair) {
+                byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                strings.add(bytes);
+                trieAt += Integer.BYTES + bytes.length;
+            }
+        }
+        trieAt = (trieAt + 7) & ~7;
+
+        ByteBuffer buffer = ByteBuffer
+            .allocate(trieAt + this.gazetteer.getByteSize())
+            .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, keys.length);
+        buffer.putInt(12, trieAt);
+
+        int at = HEADER_SIZE;
+        for (byte[] bytes : strings) {
+            buffer.putInt(at, bytes.length);
+            buffer.put(at + Integer.BYTES, bytes);
+            at += Integer.BYTES + bytes.length;
+        }
+        this.gazetteer.write(buffer, trieAt);
+
+        Files.write(file.toPath(), buffer.array());
+    }
+
     private void parseJSON(Map<String, Map<String, List<String>>> entries) {
-        this.data = new HashMap<>();
+        List<String[]> keys = new ArrayList<>();
+        List<List<List<Token>>> sets = new ArrayList<>();
+        Stemmer stemmer = new Stemmer();
+
         for (String outer_key : entries.keySet()) {
-            this.data.put(outer_key, new HashMap<>());
             for (String inner_key : entries.get(outer_key).keySet()) {
-                this.data.get(outer_key).put(inner_key, new ArrayList<>());
+                List<List<Token>> names = new ArrayList<>();
                 for (String val : entries.get(outer_key).get(inner_key)) {
-                    Stemmer stemmer = new Stemmer();
                     Tokenizer tokenizer = new Tokenizer(val);
 
-                    this.data
-                        .get(outer_key)
-                        .get(inner_key)
-                        .add(stemmer.stemTokens(tokenizer.scanTokens()));
+                    names.add(stemmer.stemTokens(tokenizer.scanTokens()));
+                }
+
+                keys.add(new String[] { outer_key, inner_key });
+                sets.add(names);
+            }
+        }
+
+        this.gazetteer = new TokenTrie(sets);
+        indexCategories(keys);
+    }
+
+    // The symbols of every entry, in either dictionary, of the categories
+    // whose entries differ from those of `previous`, sorted. Articles
+    // without any of them in their content scan the same in both. Returns
+    // null when every article may scan differently, because an empty entry
+    // of a changed category matches anywhere.
+    public int[] getChangedSymbols(Dictionary previous) {
+        List<List<int[]>> entries = this.gazetteer.getEntries();
+        List<List<int[]>> previousEntries = previous.gazetteer.getEntries();
+
+        Set<List<String>> pairs = new HashSet<>();
+        addPairs(this.categories, pairs);
+        addPairs(previous.categories, pairs);
+
+        List<Integer> symbols = new ArrayList<>();
+        for (List<String> keys : pairs) {
+            List<int[]> current = getCategoryEntries(entries, keys);
+            List<int[]> before
+                = previous.getCategoryEntries(previousEntries, keys);
+
+            boolean same = current.size() == before.size();
+            for (int e = 0; same && e < current.size(); ++e) {
+                same = Arrays.equals(current.get(e), before.get(e));
+            }
+            if (same) {
+                continue;
+            }
+
+            for (List<int[]> categoryEntries : List.of(current, before)) {
+                for (int[] entry : categoryEntries) {
+                    if (entry.length == 0) {
+                        return null;
+                    }
+                    for (int symbol : entry) {
+                        symbols.add(symbol);
+                    }
                 }
             }
         }
+
+        int[] changed = new int[symbols.size()];
+        for (int i = 0; i < changed.length; ++i) {
+            changed[i] = symbols.get(i);
+        }
+
+        return SortedInts.of(changed);
+    }
+
+    private static void addPairs(
+        Map<String, Map<String, Integer>> data,
+        Set<List<String>> pairs
+    ) {
+        for (String outer_key : data.keySet()) {
+            for (String inner_key : data.get(outer_key).keySet()) {
+                pairs.add(List.of(outer_key, inner_key));
+            }
+        }
+    }
+
+    private List<int[]> getCategoryEntries(
+        List<List<int[]>> entries,
+        List<String> keys
+    ) {
+        int category = getCategory(keys.get(0), keys.get(1));
+
+        return (category < 0) ? List.of() : entries.get(category);
+    }
+
+    // Numbers the categories in the order of their pairs of JSON keys.
+    private void indexCategories(List<String[]> keys) {
+        this.categories = new HashMap<>();
+        this.countryCategories = new HashMap<>();
+
+        for (int category = 0; category < keys.size(); ++category) {
+            String outer_key = keys.get(category)[0];
+            String inner_key = keys.get(category)[1];
+
+            this.categories.computeIfAbsent(outer_key, k -> new HashMap<>())
+                .put(inner_key, category);
+
+            int[] byCountry = this.countryCategories.computeIfAbsent(
+                outer_key, k -> newCountryCategories()
+            );
+            int country = getCountry(inner_key);
+            if (country >= 0) {
+                byCountry[country] = category;
+            }
+        }
+    }
+
+    private static int[] newCountryCategories() {
+        int[] byCountry = new int[Article.LABEL.values().length];
+        Arrays.fill(byCountry, -1);
+
+        return byCountry;
+    }
+
+    private static int getCountry(String key) {
+        for (Article.LABEL label : Article.LABEL.values()) {
+            if (label.name().equalsIgnoreCase(key)) {
+                return label.ordinal();
+            }
+        }
+
+        return -1;
+    }
+
+    public int getCategoryCount() {
+        return this.gazetteer.getSetCount();
+    }
+
+    // The id of the category of a pair of JSON keys, or -1 if there is no
+    // such category.
+    public int getCategory(String outer_key, String inner_key) {
+        Map<String, Integer> inner = this.categories.get(outer_key);
+        if (inner == null) {
+            return -1;
+        }
+
+        return inner.getOrDefault(inner_key, -1);
+    }
+
+    public int getCategory(String outer_key, Article.LABEL country) {
+        int[] byCountry = this.countryCategories.get(outer_key);
+
+        return (byCountry == null) ? -1 : byCountry[country.ordinal()];
+    }
+
+    // The categories of `outer_key` by the ordinal of their country, -1
+    // where there is none.
+    public int[] getCategories(String outer_key) {
+        int[] byCountry = this.countryCategories.get(outer_key);
+
+        return (byCountry == null)
+            ? newCountryCategories() : byCountry.clone();
+    }
+
+    // Finds every entry of every category in one pass over the tokens.
+    public GazetteerMatches scan(List<Token> tokens) {
+        return scan(tokens, this.gazetteer);
+    }
+
+    // Like scan(), but only looks for the entries of the categories set in
+    // `categories`; the others are not walked at all. Scanning for none
+    // does not look at the tokens.
+    public GazetteerMatches scan(List<Token> tokens, BitSet categories) {
+        BitSet selected = categories.get(0, getCategoryCount());
+        if (selected.isEmpty()) {
+            GazetteerMatches matches = new GazetteerMatches(tokens.size());
+            matches.finish();
+            return matches;
+        }
+        if (selected.cardinality() == getCategoryCount()) {
+            return scan(tokens, this.gazetteer);
+        }
+
+        return scan(
+            tokens,
+            this.selections.computeIfAbsent(
+                selected, k -> this.gazetteer.select(k)
+            )
+        );
+    }
+
+    private static GazetteerMatches scan(
+        List<Token> tokens,
+        TokenTrie gazetteer
+    ) {
+        GazetteerMatches matches = new GazetteerMatches(tokens.size());
+
+        int categoryCount = gazetteer.getSetCount();
+        int[] firsts = new int[categoryCount];
+        int[] found = new int[categoryCount];
+        int[] lengths = new int[categoryCount];
+
+        for (int i = 0; i < tokens.size(); ++i) {
+            int n = gazetteer.matchAll(tokens, i, firsts, found, lengths);
+            for (int k = 0; k < n; ++k) {
+                matches.add(i, found[k], lengths[k]);
+            }
+        }
+        matches.finish();
+
+        return matches;
     }
 
     public int isWestGermanyPolitician(List<Token> tokens, int pos) {
-        List<List<Token>> names = this.data.get("P").get("west_germany");
+        int names = getCategory(POLITICIANS, Article.LABEL.WEST_GERMANY);
 
         return isValidEntry(names, tokens, pos);
     }
 
     public int isCanadianCity(List<Token> tokens, int pos) {
-        List<List<Token>> cities = this.data.get("W").get("canada");
+        int cities = getCategory(CITIES, Article.LABEL.CANADA);
 
         return isValidEntry(cities, tokens, pos);
     }
 
     public int isFrenchBank(List<Token> tokens, int pos) {
-        List<List<Token>> banks = this.data.get("O").get("france");
+        int banks = getCategory(BANKS, Article.LABEL.FRANCE);
 
         return isValidEntry(banks, tokens, pos);
     }
 
     public int isJapaneseCompany(List<Token> tokens, int pos) {
-        List<List<Token>> companies = this.data.get("C").get("japan");
+        int companies = getCategory(COMPANIES, Article.LABEL.JAPAN);
 
         return isValidEntry(companies, tokens, pos);
     }
 
     public int isStateInUSA(List<Token> tokens, int pos) {
-        List<List<Token>> states = this.data.get("H").get("usa");
+        int states = getCategory(STATES, Article.LABEL.USA);
 
         return isValidEntry(states, tokens, pos);
     }
 
     public int isCapitalOfWestGerman(List<Token> tokens, int pos) {
-        List<List<Token>> capital = this.data.get("s").get("west_germany");
+        int capital = getCategory(CAPITALS, Article.LABEL.WEST_GERMANY);
 
         return isValidEntry(capital, tokens, pos);
     }
 
     public int isCapitalOfUSA(List<Token> tokens, int pos) {
-        List<List<Token>> capital = this.data.get("s").get("usa");
+        int capital = getCategory(CAPITALS, Article.LABEL.USA);
 
         return isValidEntry(capital, tokens, pos);
     }
 
     public int isCapitalOfFrance(List<Token> tokens, int pos) {
-        List<List<Token>> capital = this.data.get("s").get("france");
+        int capital = getCategory(CAPITALS, Article.LABEL.FRANCE);
 
         return isValidEntry(capital, tokens, pos);
     }
 
     public int isCapitalOfUK(List<Token> tokens, int pos) {
-        List<List<Token>> capital = this.data.get("s").get("uk");
+        int capital = getCategory(CAPITALS, Article.LABEL.UK);
 
         return isValidEntry(capital, tokens, pos);
     }
 
     public int isCapitalOfCanada(List<Token> tokens, int pos) {
-        List<List<Token>> capital = this.data.get("s").get("canada");
+        int capital = getCategory(CAPITALS, Article.LABEL.CANADA);
 
         return isValidEntry(capital, tokens, pos);
     }
 
     public int isCapitalOfJapan(List<Token> tokens, int pos) {
-        List<List<Token>> capital = this.data.get("s").get("japan");
+        int capital = getCategory(CAPITALS, Article.LABEL.JAPAN);
 
         return isValidEntry(capital, tokens, pos);
     }
 
     public int isCapital(Article.LABEL label, List<Token> tokens, int pos) {
-        List<List<Token>> currency
-            = this.data.get("s").get(label.name().toLowerCase());
+        int currency = getCategory(CAPITALS, label);
 
         return isValidEntry(currency, tokens, pos);
     }
 
     public int isWestGermanCurrency(List<Token> tokens, int pos) {
-        List<List<Token>> currency = this.data.get("m").get("west_germany");
+        int currency = getCategory(CURRENCIES, Article.LABEL.WEST_GERMANY);
 
         return isValidEntry(currency, tokens, pos);
     }
 
     public int isUSACurrency(List<Token> tokens, int pos) {
-        List<List<Token>> usa_currency = this.data.get("m").get("usa");
-        List<List<Token>> canadian_currency = this.data.get("m").get("canada");
+        int usa_currency = getCategory(CURRENCIES, Article.LABEL.USA);
+        int canadian_currency = getCategory(CURRENCIES, Article.LABEL.CANADA);
 
         if (isValidEntry(canadian_currency, tokens, pos - 1) > 0) {
             return 0;
@@ -137,66 +486,40 @@ public class Dictionary {
     }
 
     public int isFrenchCurrency(List<Token> tokens, int pos) {
-        List<List<Token>> currency = this.data.get("m").get("france");
+        int currency = getCategory(CURRENCIES, Article.LABEL.FRANCE);
 
         return isValidEntry(currency, tokens, pos);
     }
 
     public int isUKCurrency(List<Token> tokens, int pos) {
-        List<List<Token>> currency = this.data.get("m").get("uk");
+        int currency = getCategory(CURRENCIES, Article.LABEL.UK);
 
         return isValidEntry(currency, tokens, pos);
     }
 
     public int isCanadianCurrency(List<Token> tokens, int pos) {
-        List<List<Token>> currency = this.data.get("m").get("canada");
+        int currency = getCategory(CURRENCIES, Article.LABEL.CANADA);
 
         return isValidEntry(currency, tokens, pos);
     }
 
     public int isJapaneseCurrencty(List<Token> tokens, int pos) {
-        List<List<Token>> currency = this.data.get("m").get("japan");
+        int currency = getCategory(CURRENCIES, Article.LABEL.JAPAN);
 
         return isValidEntry(currency, tokens, pos);
     }
 
     public int isCurrency(Article.LABEL label, List<Token> tokens, int pos) {
-        List<List<Token>> currency
-            = this.data.get("m").get(label.name().toLowerCase());
+        int currency = getCategory(CURRENCIES, label);
 
         return isValidEntry(currency, tokens, pos);
     }
 
-    private int isValidEntry(
-        List<List<Token>> entries,
-        List<Token> input,
-        int pos
-    ) {
-        if (pos < 0) {
+    private int isValidEntry(int category, List<Token> input, int pos) {
+        if (category < 0) {
             return 0;
         }
 
-        for (List<Token> entry : entries) {
-            if (entry.size() > input.size() - pos) {
-                continue;
-            }
-
-            boolean foundMismatch = false;
-            for (int i = 0; i < entry.size(); ++i) {
-                String input_part = input.get(pos + i).getValue();
-                String entry_part = entry.get(i).getValue();
-
-                if (!input_part.equals(entry_part)) {
-                    foundMismatch = true;
-                    break;
-                }
-            }
-
-            if (!foundMismatch) {
-                return entry.size();
-            }
-        }
-
-        return 0;
+        return this.gazetteer.match(input, pos, category);
     }
 }
@@ -0,0 +1,117 @@
+package com.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Holds the Dictionary in use and replaces it as a whole when its file
+// changes, without restarting. A Dictionary is never modified once built,
+// so a reader takes a snapshot with get() and uses it for a whole article.
+// A reload in between cannot mix two versions. New dictionaries are built
+// on a background thread, one reload at a time, and published with a
+// single volatile write, so readers never wait for them.
+//
+// The file may be JSON or compiled, see Dictionary.load(). Compiled files
+// are copied out of their mapping as they are loaded, so they may be
+// replaced while in use.
+public class DictionaryHolder implements AutoCloseable {
+
+    private File file;
+    private volatile Dictionary current;
+
+    // The file as it was when `current` was loaded from it, written by the
+    // reloading thread only.
+    private long lastModified;
+    private long length;
+
+    private ExecutorService reloader = Executors.newSingleThreadExecutor(
+        runnable -> {
+            Thread thread = new Thread(runnable, "dictionary-reloader");
+            thread.setDaemon(true);
+            return thread;
+        }
+    );
+
+    public DictionaryHolder(File file) throws IOException {
+        this.file = file;
+        this.lastModified = file.lastModified();
+        this.length = file.length();
+        this.current = Dictionary.load(file);
+    }
+
+    public Dictionary get() {
+        return this.current;
+    }
+
+    // Loads the file again in the background. The future completes with the
+    // new dictionary once it is published, or with the error, in which
+    // case the previous one stays in use.
+    public CompletableFuture<Dictionary> reload() {
+        return reload(true);
+    }
+
+    // Like reload(), but only if the file was modified since it was last
+    // loaded. Otherwise the future completes with the dictionary in use.
+    public CompletableFuture<Dictionary> reloadIfModified() {
+        return reload(false);
+    }
+
+    private CompletableFuture<Dictionary> reload(boolean always) {
+        return CompletableFuture.supplyAsync(() -> {
+            long lastModified = this.file.lastModified();
+            long length = this.file.length();
+            if (!always
+                && lastModified == this.lastModified
+                && length == this.length) {
+
+                return this.current;
+            }
+
+            try {
+                Dictionary dict = Dictionary.load(this.file);
+                this.lastModified = lastModified;
+                this.length = length;
+                this.current = dict;
+                return dict;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, this.reloader);
+    }
+
+    // Whether an article with `content` may be featurized differently after
+    // a reload, given the changed symbols from
+    // Dictionary.getChangedSymbols(). Only those articles need to be
+    // featurized again.
+    public static boolean isAffected(
+        List<Token> content,
+        int[] changedSymbols
+    ) {
+        if (changedSymbols == null) {
+            return true;
+        }
+        if (changedSymbols.length == 0) {
+            return false;
+        }
+
+        for (Token token : content) {
+            if (Arrays.binarySearch(changedSymbols, token.getSymbol()) >= 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Lets the reloads already requested finish and stops the background
+    // thread. The dictionary in use stays available.
+    @Override
+    public void close() {
+        this.reloader.shutdown();
+    }
+}
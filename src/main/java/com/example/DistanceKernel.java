@@ -0,0 +1,752 @@
+package com.example;
+
+import com.example.FeatureVector.FEATURE;
+import com.example.FeatureVector.METRIC;
+
+// A distance function with the feature flags, the metric and the
+// normalisers fixed at construction. The enabled components are final
+// fields, the normalisers are turned into lookup tables or reciprocals and
+// every metric gets its own subclass, so the hot loop in Classifier only
+// ever sees one implementation.
+public abstract class DistanceKernel {
+
+    private static final float[] HAMMING_DISTANCES = {
+        0.0f / 6.0f,
+        1.0f / 6.0f,
+        2.0f / 6.0f,
+        3.0f / 6.0f,
+        4.0f / 6.0f,
+        5.0f / 6.0f,
+        6.0f / 6.0f
+    };
+
+    public static DistanceKernel compile(
+        short featureFlags,
+        METRIC metric,
+        int westGermanPoliticianMaxCount,
+        float canadianCityMaxFreq
+    ) {
+        return compile(
+            featureFlags,
+            metric,
+            westGermanPoliticianMaxCount,
+            canadianCityMaxFreq,
+            null
+        );
+    }
+
+    // The grams table, if any, replaces the trigram intersections of the
+    // FeatureStore rows whose first capitalized words it holds.
+    public static DistanceKernel compile(
+        short featureFlags,
+        METRIC metric,
+        int westGermanPoliticianMaxCount,
+        float canadianCityMaxFreq,
+        GramsTable gramsTable
+    ) {
+        return compile(
+            featureFlags,
+            metric,
+            westGermanPoliticianMaxCount,
+            canadianCityMaxFreq,
+            gramsTable,
+            FeatureExtractors.NONE
+        );
+    }
+
+    // Every extractor adds a component after the built-in ones, so the
+    // vectors and stores compared must all have been built with them.
+    public static DistanceKernel compile(
+        short featureFlags,
+        METRIC metric,
+        int westGermanPoliticianMaxCount,
+        float canadianCityMaxFreq,
+        GramsTable gramsTable,
+        FeatureExtractors extractors
+    ) {
+        DistanceKernel kernel;
+
+        switch (metric) {
+            case EUCLIDEAN:
+                kernel = new Euclidean(
+                    featureFlags,
+                    westGermanPoliticianMaxCount,
+                    canadianCityMaxFreq,
+                    extractors
+                );
+                break;
+            case TAXICAB:
+                kernel = new Taxicab(
+                    featureFlags,
+                    westGermanPoliticianMaxCount,
+                    canadianCityMaxFreq,
+                    extractors
+                );
+                break;
+            default:
+                kernel = new Chebyshev(
+                    featureFlags,
+                    westGermanPoliticianMaxCount,
+                    canadianCityMaxFreq,
+                    extractors
+                );
+                break;
+        }
+
+        kernel.gramsTable = gramsTable;
+        return kernel;
+    }
+
+    private final METRIC metric;
+    private final short featureFlags;
+
+    private final boolean westGermanPoliticalCount;
+    private final boolean canadianCityFreq;
+    private final boolean frenchBankPresence;
+    private final boolean ukAcronymPresence;
+    private final boolean japaneseCompanyPresence;
+    private final boolean usaStatePresence;
+    private final boolean capitalsPresence;
+    private final boolean currenciesPresence;
+    private final boolean firstCapitalizedWord;
+    private final boolean firstNumber;
+    private final boolean mostFrequentAcronym;
+    private final boolean title;
+    private final FeatureExtractors extractors;
+    private final int extractorCount;
+    private final int componentCount;
+    private final boolean trueMetric;
+
+    private final int westGermanPoliticianMaxCount;
+    private final float[] westGermanPoliticianDistances;
+    private final float canadianCityMaxFreq;
+
+    private GramsTable gramsTable;
+
+    private DistanceKernel(
+        METRIC metric,
+        short featureFlags,
+        int westGermanPoliticianMaxCount,
+        float canadianCityMaxFreq,
+        FeatureExtractors extractors
+    ) {
+        this.metric = metric;
+        this.featureFlags = featureFlags;
+
+        this.westGermanPoliticalCount
+            = isEnabled(featureFlags, FEATURE.WEST_GERMAN_POLITICAL_COUNT);
+        this.canadianCityFreq
+            = isEnabled(featureFlags, FEATURE.CANADIAN_CITY_FREQ);
+        this.frenchBankPresence
+            = isEnabled(featureFlags, FEATURE.FRENCH_BANK_PRESENCE);
+        this.ukAcronymPresence
+            = isEnabled(featureFlags, FEATURE.UK_ACRONYM_PRESENCE);
+        this.japaneseCompanyPresence
+            = isEnabled(featureFlags, FEATURE.JAPANESE_COMPANY_PRESENCE);
+        this.usaStatePresence
+            = isEnabled(featureFlags, FEATURE.USA_STATE_PRESENCE);
+        this.capitalsPresence
+            = isEnabled(featureFlags, FEATURE.CAPITALS_PRESENCE);
+        this.currenciesPresence
+            = isEnabled(featureFlags, FEATURE.CURRENCIES_PRESENCE);
+        this.firstCapitalizedWord
+            = isEnabled(featureFlags, FEATURE.FIRST_CAPITALIZED_WORD);
+        this.firstNumber
+            = isEnabled(featureFlags, FEATURE.FIRST_NUMBER);
+        this.mostFrequentAcronym
+            = isEnabled(featureFlags, FEATURE.MOST_FREQUENT_ACRONYM);
+        this.title
+            = isEnabled(featureFlags, FEATURE.TITLE);
+
+        this.extractors = extractors;
+        this.extractorCount = extractors.size();
+
+        int count = this.extractorCount;
+        for (FEATURE f : FEATURE.values()) {
+            if (isEnabled(featureFlags, f)) ++count;
+        }
+        this.componentCount = count;
+
+        // The counts are small integers, so every possible normalised
+        // difference is computed up front. The differences are divided
+        // exactly as in FeatureVector.getDistance(), since multiplying by
+        // the reciprocal may round differently and reorder the neighbours.
+        this.westGermanPoliticianMaxCount
+            = Math.max(westGermanPoliticianMaxCount, 0);
+        this.westGermanPoliticianDistances
+            = new float[this.westGermanPoliticianMaxCount + 1];
+        for (int i = 0; i <= this.westGermanPoliticianMaxCount; ++i) {
+            this.westGermanPoliticianDistances[i]
+                = i / (float)westGermanPoliticianMaxCount;
+        }
+        this.canadianCityMaxFreq = canadianCityMaxFreq;
+
+        // Every built-in component but the first capitalized word one is a
+        // metric on its own (the grams similarity is not even symmetric),
+        // the extractors tell for theirs, and so is any of the three ways of
+        // combining them, as long as the normalisers are positive and
+        // finite.
+        this.trueMetric = count > 0
+            && !this.firstCapitalizedWord
+            && extractors.isMetric()
+            && (!this.westGermanPoliticalCount
+                || westGermanPoliticianMaxCount > 0)
+            && (!this.canadianCityFreq
+                || (canadianCityMaxFreq > 0.0f
+                    && 1.0f / canadianCityMaxFreq < Float.POSITIVE_INFINITY));
+    }
+
+    public METRIC getMetric() {
+        return this.metric;
+    }
+
+    public short getFeatureFlags() {
+        return this.featureFlags;
+    }
+
+    public int getComponentCount() {
+        return this.componentCount;
+    }
+
+    // Whether the distance satisfies the triangle inequality, which is what
+    // metric indexes such as VantagePointTree rely on.
+    public boolean isMetric() {
+        return this.trueMetric;
+    }
+
+    protected abstract float accumulate(float acc, float diff, int index);
+
+    protected abstract boolean exceeds(float acc, float cutoff);
+
+    protected abstract float finish(float acc);
+
+    public float getDistance(FeatureVector query, FeatureVector other) {
+        return getDistance(query, other, Float.POSITIVE_INFINITY);
+    }
+
+    // Returns infinity as soon as the distance is known to be greater than
+    // the cutoff, as FeatureVector.getDistance() does.
+    public float getDistance(
+        FeatureVector query,
+        FeatureVector other,
+        float cutoff
+    ) {
+        float acc = 0.0f;
+        int count = 0;
+
+        long diffFlags = query.getFlags() ^ other.getFlags();
+
+        if (westGermanPoliticalCount) {
+            acc = accumulate(
+                acc,
+                getWestGermanPoliticianDistance(
+                    query.getWestGermanPoliticianCount(),
+                    other.getWestGermanPoliticianCount()
+                ),
+                count++
+            );
+        }
+        if (canadianCityFreq) {
+            acc = accumulate(
+                acc,
+                getCanadianCityDistance(
+                    query.getCanadianCityFreq(),
+                    other.getCanadianCityFreq()
+                ),
+                count++
+            );
+        }
+        acc = accumulateFlags(acc, diffFlags, count);
+        count += getFlagComponentCount();
+
+        if (exceeds(acc, cutoff)) {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        float firstNumberDist
+            = (query.getFirstNumberSymbol() == other.getFirstNumberSymbol())
+                ? 0.0f : 1.0f;
+        float mostFrequentAcronymDist
+            = (query.getMostFrequentAcronymSymbol()
+                == other.getMostFrequentAcronymSymbol())
+                    ? 0.0f : 1.0f;
+
+        if (exceeds(
+                accumulateSymbols(
+                    acc, count, firstNumberDist, mostFrequentAcronymDist
+                ),
+                cutoff)) {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        if (firstCapitalizedWord) {
+            acc = accumulate(
+                acc,
+                1.0f - query.getGramsSimilarity(other),
+                count++
+            );
+        }
+        acc = accumulateSymbols(
+            acc, count, firstNumberDist, mostFrequentAcronymDist
+        );
+        count += getSymbolComponentCount();
+
+        if (title) {
+            if (exceeds(acc, cutoff)) {
+                return Float.POSITIVE_INFINITY;
+            }
+
+            acc = accumulate(
+                acc,
+                1.0f - query.getTitlesSimilarity(other),
+                count++
+            );
+        }
+
+        if (this.extractorCount > 0) {
+            if (exceeds(acc, cutoff)) {
+                return Float.POSITIVE_INFINITY;
+            }
+
+            float[] queryValues = query.getExtractedValues();
+            float[] otherValues = other.getExtractedValues();
+            for (int e = 0; e < this.extractorCount; ++e) {
+                acc = accumulate(
+                    acc,
+                    this.extractors.getDistance(
+                        e, queryValues[e], otherValues[e]
+                    ),
+                    count++
+                );
+            }
+        }
+
+        return finish(acc);
+    }
+
+    // Distance between row `query` of `queries` and row `row` of `store`,
+    // where `queries` was encoded with the symbols of `store`.
+    public float getDistance(
+        FeatureStore queries,
+        int query,
+        FeatureStore store,
+        int row,
+        float cutoff
+    ) {
+        float acc = 0.0f;
+        int count = 0;
+
+        long diffFlags = queries.getFlags(query) ^ store.getFlags(row);
+
+        if (westGermanPoliticalCount) {
+            acc = accumulate(
+                acc,
+                getWestGermanPoliticianDistance(
+                    queries.getWestGermanPoliticianCount(query),
+                    store.getWestGermanPoliticianCount(row)
+                ),
+                count++
+            );
+        }
+        if (canadianCityFreq) {
+            acc = accumulate(
+                acc,
+                getCanadianCityDistance(
+                    queries.getCanadianCityFreq(query),
+                    store.getCanadianCityFreq(row)
+                ),
+                count++
+            );
+        }
+        acc = accumulateFlags(acc, diffFlags, count);
+        count += getFlagComponentCount();
+
+        if (exceeds(acc, cutoff)) {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        float firstNumberDist
+            = (queries.getFirstNumber(query) == store.getFirstNumber(row))
+                ? 0.0f : 1.0f;
+        float mostFrequentAcronymDist
+            = (queries.getMostFrequentAcronym(query)
+                == store.getMostFrequentAcronym(row))
+                    ? 0.0f : 1.0f;
+
+        if (exceeds(
+                accumulateSymbols(
+                    acc, count, firstNumberDist, mostFrequentAcronymDist
+                ),
+                cutoff)) {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        if (firstCapitalizedWord) {
+            acc = accumulate(
+                acc,
+                getGramsDistance(queries, query, store, row),
+                count++
+            );
+        }
+        acc = accumulateSymbols(
+            acc, count, firstNumberDist, mostFrequentAcronymDist
+        );
+        count += getSymbolComponentCount();
+
+        if (title) {
+            if (exceeds(acc, cutoff)) {
+                return Float.POSITIVE_INFINITY;
+            }
+
+            acc = accumulate(
+                acc,
+                getTitleDistance(
+                    store.countCommonTitleTokens(row, queries, query),
+                    queries.getTitleSize(query),
+                    store.getTitleSize(row)
+                ),
+                count++
+            );
+        }
+
+        if (this.extractorCount > 0) {
+            if (exceeds(acc, cutoff)) {
+                return Float.POSITIVE_INFINITY;
+            }
+
+            for (int e = 0; e < this.extractorCount; ++e) {
+                acc = accumulate(
+                    acc,
+                    this.extractors.getDistance(
+                        e,
+                        queries.getExtractedValue(query, e),
+                        store.getExtractedValue(row, e)
+                    ),
+                    count++
+                );
+            }
+        }
+
+        return finish(acc);
+    }
+
+    // Same ordering as FeatureVector.getSimilarity(), i.e. one minus the
+    // euclidean distance scaled by the square root of the component count.
+    public float getSimilarity(FeatureVector query, FeatureVector other) {
+        float sum = 0.0f;
+        float d;
+
+        if (westGermanPoliticalCount) {
+            d = getWestGermanPoliticianDistance(
+                query.getWestGermanPoliticianCount(),
+                other.getWestGermanPoliticianCount()
+            );
+            sum += d * d;
+        }
+        if (canadianCityFreq) {
+            d = getCanadianCityDistance(
+                query.getCanadianCityFreq(),
+                other.getCanadianCityFreq()
+            );
+            sum += d * d;
+        }
+
+        long diffFlags = query.getFlags() ^ other.getFlags();
+        if (frenchBankPresence
+            && (diffFlags & FeatureVector.FRENCH_BANK_BIT) != 0) {
+            sum += 1.0f;
+        }
+        if (ukAcronymPresence
+            && (diffFlags & FeatureVector.UK_ACRONYM_BIT) != 0) {
+            sum += 1.0f;
+        }
+        if (japaneseCompanyPresence
+            && (diffFlags & FeatureVector.JAPANESE_COMPANY_BIT) != 0) {
+            sum += 1.0f;
+        }
+        if (usaStatePresence
+            && (diffFlags & FeatureVector.USA_STATE_BIT) != 0) {
+            sum += 1.0f;
+        }
+        if (capitalsPresence) {
+            d = getHammingDistance(diffFlags & FeatureVector.CAPITALS_MASK);
+            sum += d * d;
+        }
+        if (currenciesPresence) {
+            d = getHammingDistance(diffFlags & FeatureVector.CURRENCIES_MASK);
+            sum += d * d;
+        }
+        if (firstCapitalizedWord) {
+            d = 1.0f - query.getGramsSimilarity(other);
+            sum += d * d;
+        }
+        if (firstNumber
+            && query.getFirstNumberSymbol() != other.getFirstNumberSymbol()) {
+            sum += 1.0f;
+        }
+        if (mostFrequentAcronym
+            && query.getMostFrequentAcronymSymbol()
+                != other.getMostFrequentAcronymSymbol()) {
+            sum += 1.0f;
+        }
+        if (title) {
+            d = 1.0f - query.getTitlesSimilarity(other);
+            sum += d * d;
+        }
+        for (int e = 0; e < this.extractorCount; ++e) {
+            d = this.extractors.getDistance(
+                e,
+                query.getExtractedValues()[e],
+                other.getExtractedValues()[e]
+            );
+            sum += d * d;
+        }
+
+        return 1.0f
+            - (float)(Math.sqrt(sum) / Math.sqrt(this.componentCount));
+    }
+
+    private float accumulateFlags(float acc, long diffFlags, int count) {
+        if (frenchBankPresence) {
+            acc = accumulate(
+                acc,
+                ((diffFlags & FeatureVector.FRENCH_BANK_BIT) == 0)
+                    ? 0.0f : 1.0f,
+                count++
+            );
+        }
+        if (ukAcronymPresence) {
+            acc = accumulate(
+                acc,
+                ((diffFlags & FeatureVector.UK_ACRONYM_BIT) == 0)
+                    ? 0.0f : 1.0f,
+                count++
+            );
+        }
+        if (japaneseCompanyPresence) {
+            acc = accumulate(
+                acc,
+                ((diffFlags & FeatureVector.JAPANESE_COMPANY_BIT) == 0)
+                    ? 0.0f : 1.0f,
+                count++
+            );
+        }
+        if (usaStatePresence) {
+            acc = accumulate(
+                acc,
+                ((diffFlags & FeatureVector.USA_STATE_BIT) == 0)
+                    ? 0.0f : 1.0f,
+                count++
+            );
+        }
+        if (capitalsPresence) {
+            acc = accumulate(
+                acc,
+                getHammingDistance(diffFlags & FeatureVector.CAPITALS_MASK),
+                count++
+            );
+        }
+        if (currenciesPresence) {
+            acc = accumulate(
+                acc,
+                getHammingDistance(diffFlags & FeatureVector.CURRENCIES_MASK),
+                count++
+            );
+        }
+
+        return acc;
+    }
+
+    private int getFlagComponentCount() {
+        return (frenchBankPresence ? 1 : 0)
+            + (ukAcronymPresence ? 1 : 0)
+            + (japaneseCompanyPresence ? 1 : 0)
+            + (usaStatePresence ? 1 : 0)
+            + (capitalsPresence ? 1 : 0)
+            + (currenciesPresence ? 1 : 0);
+    }
+
+    private float accumulateSymbols(
+        float acc,
+        int count,
+        float firstNumberDist,
+        float mostFrequentAcronymDist
+    ) {
+        if (firstNumber) {
+            acc = accumulate(acc, firstNumberDist, count++);
+        }
+        if (mostFrequentAcronym) {
+            acc = accumulate(acc, mostFrequentAcronymDist, count++);
+        }
+
+        return acc;
+    }
+
+    private int getSymbolComponentCount() {
+        return (firstNumber ? 1 : 0) + (mostFrequentAcronym ? 1 : 0);
+    }
+
+    private float getWestGermanPoliticianDistance(int c1, int c2) {
+        int diff = Math.abs(c1 - c2);
+
+        if (diff <= this.westGermanPoliticianMaxCount) {
+            return this.westGermanPoliticianDistances[diff];
+        }
+
+        // Queries normalised with a space fitted on the training vectors
+        // alone may lie past the table.
+        return diff / (float)this.westGermanPoliticianMaxCount;
+    }
+
+    private float getCanadianCityDistance(float f1, float f2) {
+        return Math.abs(f1 - f2) / this.canadianCityMaxFreq;
+    }
+
+    private static float getHammingDistance(long bits) {
+        return HAMMING_DISTANCES[Long.bitCount(bits)];
+    }
+
+    private float getGramsDistance(
+        FeatureStore queries,
+        int query,
+        FeatureStore store,
+        int row
+    ) {
+        if (this.gramsTable != null) {
+            float d = this.gramsTable.getDistance(
+                queries.getFirstCapitalizedWord(query),
+                store.getFirstCapitalizedWord(row)
+            );
+            if (d != GramsTable.MISSING) {
+                return d;
+            }
+        }
+
+        return getGramsDistance(
+            store.countCommonGrams(row, queries, query),
+            store.getFirstCapitalizedWordLength(row)
+        );
+    }
+
+    static float getGramsDistance(int common, int len) {
+        if (len == 0) return 0.0f;
+        else if (len < 3) return 1.0f;
+
+        return 1.0f - (1.0f / (float)(len - 2)) * (float)common;
+    }
+
+    private static float getTitleDistance(int common, int t1len, int t2len) {
+        int len = (t1len > t2len) ? t1len : t2len;
+
+        if (t1len == 0 && t2len == 0) return 0.0f;
+        else if (t1len == 0 || t2len == 0) return 1.0f;
+
+        return 1.0f - (float)common / (float)len;
+    }
+
+    private static boolean isEnabled(short featureFlags, FEATURE feature) {
+        return (featureFlags & feature.id) != 0;
+    }
+
+    private static final class Euclidean extends DistanceKernel {
+
+        private Euclidean(
+            short featureFlags,
+            int westGermanPoliticianMaxCount,
+            float canadianCityMaxFreq,
+            FeatureExtractors extractors
+        ) {
+            super(
+                METRIC.EUCLIDEAN,
+                featureFlags,
+                westGermanPoliticianMaxCount,
+                canadianCityMaxFreq,
+                extractors
+            );
+        }
+
+        @Override
+        protected float accumulate(float acc, float diff, int index) {
+            return (float)(acc + (double)diff * (double)diff);
+        }
+
+        // The square root is rounded, so only a sum of squares above the
+        // square of the next float is guaranteed to end up past the cutoff.
+        @Override
+        protected boolean exceeds(float acc, float cutoff) {
+            double bound = Math.nextUp(cutoff);
+            return acc > bound * bound;
+        }
+
+        @Override
+        protected float finish(float acc) {
+            return (float)Math.sqrt(acc);
+        }
+    }
+
+    private static final class Taxicab extends DistanceKernel {
+
+        private Taxicab(
+            short featureFlags,
+            int westGermanPoliticianMaxCount,
+            float canadianCityMaxFreq,
+            FeatureExtractors extractors
+        ) {
+            super(
+                METRIC.TAXICAB,
+                featureFlags,
+                westGermanPoliticianMaxCount,
+                canadianCityMaxFreq,
+                extractors
+            );
+        }
+
+        @Override
+        protected float accumulate(float acc, float diff, int index) {
+            return acc + diff;
+        }
+
+        @Override
+        protected boolean exceeds(float acc, float cutoff) {
+            return acc > cutoff;
+        }
+
+        @Override
+        protected float finish(float acc) {
+            return acc;
+        }
+    }
+
+    private static final class Chebyshev extends DistanceKernel {
+
+        private Chebyshev(
+            short featureFlags,
+            int westGermanPoliticianMaxCount,
+            float canadianCityMaxFreq,
+            FeatureExtractors extractors
+        ) {
+            super(
+                METRIC.CHEBYSHEV,
+                featureFlags,
+                westGermanPoliticianMaxCount,
+                canadianCityMaxFreq,
+                extractors
+            );
+        }
+
+        @Override
+        protected float accumulate(float acc, float diff, int index) {
+            return (index == 0 || diff > acc) ? diff : acc;
+        }
+
+        @Override
+        protected boolean exceeds(float acc, float cutoff) {
+            return acc > cutoff;
+        }
+
+        @Override
+        protected float finish(float acc) {
+            return acc;
+        }
+    }
+}
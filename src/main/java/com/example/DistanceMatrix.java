@@ -0,0 +1,171 @@
+package com.example;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// Every distance between the rows of `queries` and the rows of `store`,
+// computed once so that runs differing only in K or in the voting do not
+// have to compute them again. Small matrices are one float[]; larger ones
+// are split into direct buffers of whole query rows, off the Java heap. A
+// buffer is at most 1 GiB, so a store of more than 2^28 rows cannot be
+// cached.
+public class DistanceMatrix {
+
+    private static final long HEAP_LIMIT = 1L << 26;
+    private static final long BUFFER_LIMIT = 1L << 30;
+
+    private int queryCount;
+    private int rowCount;
+
+    private float[] distances;
+
+    private FloatBuffer[] buffers;
+    private int queriesPerBuffer;
+
+    public DistanceMatrix(
+        FeatureStore queries,
+        FeatureStore store,
+        DistanceKernel kernel,
+        int threads
+    ) {
+        this(queries, store, kernel, threads, HEAP_LIMIT, BUFFER_LIMIT);
+    }
+
+    DistanceMatrix(
+        FeatureStore queries,
+        FeatureStore store,
+        DistanceKernel kernel,
+        int threads,
+        long heapLimit
+    ) {
+        this(queries, store, kernel, threads, heapLimit, BUFFER_LIMIT);
+    }
+
+    DistanceMatrix(
+        FeatureStore queries,
+        FeatureStore store,
+        DistanceKernel kernel,
+        int threads,
+        long heapLimit,
+        long bufferLimit
+    ) {
+        assert(threads > 0);
+        assert(bufferLimit <= Integer.MAX_VALUE);
+
+        this.queryCount = queries.getSize();
+        this.rowCount = store.getSize();
+
+        long size = (long)this.queryCount * this.rowCount;
+        if (size <= heapLimit) {
+            this.distances = new float[(int)size];
+        } else {
+            long rowBytes = (long)this.rowCount * Float.BYTES;
+            if (rowBytes > bufferLimit) {
+                throw new IllegalArgumentException(
+                    "Distance matrix rows of " + this.rowCount
+                        + " distances do not fit in a buffer of "
+                        + bufferLimit + " bytes"
+                );
+            }
+            this.queriesPerBuffer = (int)Math.min(
+                bufferLimit / Math.max(1, rowBytes), Integer.MAX_VALUE
+            );
+            int bufferCount = (int)(
+                ((long)this.queryCount + this.queriesPerBuffer - 1)
+                    / this.queriesPerBuffer
+            );
+
+            this.buffers = new FloatBuffer[bufferCount];
+            for (int b = 0; b < bufferCount; ++b) {
+                int bufferQueries = Math.min(
+                    this.queriesPerBuffer,
+                    this.queryCount - b * this.queriesPerBuffer
+                );
+                this.buffers[b] = ByteBuffer
+                    .allocateDirect((int)(bufferQueries * rowBytes))
+                    .order(ByteOrder.nativeOrder())
+                    .asFloatBuffer();
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> IntStream.range(0, this.queryCount)
+                .parallel()
+                .forEach(q -> fill(queries, q, store, kernel))
+            ).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public int getQueryCount() {
+        return this.queryCount;
+    }
+
+    public int getRowCount() {
+        return this.rowCount;
+    }
+
+    public boolean isOffHeap() {
+        return this.buffers != null;
+    }
+
+    public float get(int query, int row) {
+        if (this.distances != null) {
+            return this.distances[query * this.rowCount + row];
+        }
+
+        return this.buffers[query / this.queriesPerBuffer].get(
+            (query % this.queriesPerBuffer) * this.rowCount + row
+        );
+    }
+
+    // Offers every row to the heap in increasing order, as the linear scan
+    // in Classifier does.
+    public void offerAll(int query, NeighbourHeap heap) {
+        if (this.distances != null) {
+            int offset = query * this.rowCount;
+            for (int row = 0; row < this.rowCount; ++row) {
+                heap.offer(row, this.distances[offset + row]);
+            }
+            return;
+        }
+
+        FloatBuffer buffer = this.buffers[query / this.queriesPerBuffer];
+        int offset = (query % this.queriesPerBuffer) * this.rowCount;
+        for (int row = 0; row < this.rowCount; ++row) {
+            heap.offer(row, buffer.get(offset + row));
+        }
+    }
+
+    private void fill(
+        FeatureStore queries,
+        int query,
+        FeatureStore store,
+        DistanceKernel kernel
+    ) {
+        for (int row = 0; row < this.rowCount; ++row) {
+            float d = kernel.getDistance(
+                queries, query, store, row, Float.POSITIVE_INFINITY
+            );
+
+            if (this.distances != null) {
+                this.distances[query * this.rowCount + row] = d;
+            } else {
+                this.buffers[query / this.queriesPerBuffer].put(
+                    (query % this.queriesPerBuffer) * this.rowCount + row, d
+                );
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.example;
+
+import java.util.List;
+
+// A feature added to the built-in ones of FeatureVector. Every extractor
+// gets to see each content token once, in order, during the same pass over
+// the content that extracts the built-in features, so adding one does not
+// add another scan. Extractors are enabled by being in the
+// FeatureExtractors a vector is built with rather than by a FEATURE bit,
+// so there may be any number of them.
+//
+// Implementations are found with java.util.ServiceLoader, see
+// FeatureExtractors.load(). The state holds whatever the extractor needs
+// while scanning one article, and must not be shared between articles.
+public interface FeatureExtractor<S> {
+
+    String getName();
+
+    S newState();
+
+    // Called for every index i of `content`, in increasing order. The
+    // tokens past i may be looked at, but are still passed in later.
+    void accept(S state, List<Token> content, int i);
+
+    // The value of the feature once the whole content has been seen.
+    float getValue(S state);
+
+    // The distance component between two values, in [0, 1] for the
+    // values of vectors the distances are normalised with.
+    default float getDistance(float value, float other) {
+        return Math.abs(value - other);
+    }
+
+    // Whether getDistance() satisfies the triangle inequality. Override it
+    // together with getDistance().
+    default boolean isMetric() {
+        return true;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+// The enabled FeatureExtractor plugins, in the order their values are kept
+// in. Runs all of them over a token stream at once: FeatureVector creates
+// their states and then feeds each token to every extractor before moving
+// on to the next token.
+public class FeatureExtractors {
+
+    public static final FeatureExtractors NONE
+        = new FeatureExtractors(List.of());
+
+    private final List<FeatureExtractor<?>> extractors;
+
+    public FeatureExtractors(List<FeatureExtractor<?>> extractors) {
+        this.extractors = List.copyOf(extractors);
+    }
+
+    // Every extractor declared in a META-INF/services/
+    // com.example.FeatureExtractor file on the class path.
+    @SuppressWarnings("rawtypes")
+    public static FeatureExtractors load() {
+        List<FeatureExtractor<?>> extractors = new ArrayList<>();
+        for (FeatureExtractor extractor
+            : ServiceLoader.load(FeatureExtractor.class)) {
+
+            extractors.add(extractor);
+        }
+
+        return extractors.isEmpty() ? NONE : new FeatureExtractors(extractors);
+    }
+
+    public int size() {
+        return this.extractors.size();
+    }
+
+    public FeatureExtractor<?> get(int index) {
+        return this.extractors.get(index);
+    }
+
+    public boolean isMetric() {
+        for (FeatureExtractor<?> extractor : this.extractors) {
+            if (!extractor.isMetric()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    Object[] newStates() {
+        Object[] states = new Object[this.extractors.size()];
+        for (int e = 0; e < states.length; ++e) {
+            states[e] = this.extractors.get(e).newState();
+        }
+
+        return states;
+    }
+
+    // Feeds content[from] up to content[to] to every extractor, token by
+    // token, and returns `to`.
+    int accept(Object[] states, List<Token> content, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            for (int e = 0; e < states.length; ++e) {
+                accept(this.extractors.get(e), states[e], content, i);
+            }
+        }
+
+        return to;
+    }
+
+    float[] getValues(Object[] states) {
+        float[] values = new float[states.length];
+        for (int e = 0; e < states.length; ++e) {
+            values[e] = getValue(this.extractors.get(e), states[e]);
+        }
+
+        return values;
+    }
+
+    float getDistance(int index, float value, float other) {
+        return this.extractors.get(index).getDistance(value, other);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S> void accept(
+        FeatureExtractor<S> extractor,
+        Object state,
+        List<Token> content,
+        int i
+    ) {
+        extractor.accept((S)state, content, i);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S> float getValue(
+        FeatureExtractor<S> extractor,
+        Object state
+    ) {
+        return extractor.getValue((S)state);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example;
+
+import java.util.List;
+
+// The normalisers of the count and frequency features, i.e. their largest
+// values over the vectors seen so far. Vectors are accepted one at a time
+// as they are featurized, and the spaces of separate threads are merged
+// afterwards.
+//
+// A space fitted on the training vectors alone can be applied to any
+// query, whose values may then lie past the largest ones seen. The
+// normalisers are passed on to the Classifier, whose DistanceKernel
+// handles such values.
+public class FeatureSpace {
+
+    private int westGermanPoliticianMaxCount;
+    private float canadianCityMaxFreq;
+
+    public FeatureSpace() {
+        this(0, 0.0f);
+    }
+
+    // A space fitted before, e.g. the one saved with a Model.
+    public FeatureSpace(
+        int westGermanPoliticianMaxCount,
+        float canadianCityMaxFreq
+    ) {
+        this.westGermanPoliticianMaxCount = westGermanPoliticianMaxCount;
+        this.canadianCityMaxFreq = canadianCityMaxFreq;
+    }
+
+    public static FeatureSpace fit(List<FeatureVector> vectors) {
+        FeatureSpace space = new FeatureSpace();
+        for (FeatureVector vec : vectors) {
+            space.accept(vec);
+        }
+
+        return space;
+    }
+
+    public void accept(FeatureVector vec) {
+        if (vec.getWestGermanPoliticianCount()
+            > this.westGermanPoliticianMaxCount) {
+
+            this.westGermanPoliticianMaxCount
+                = vec.getWestGermanPoliticianCount();
+        }
+
+        if (vec.getCanadianCityFreq() > this.canadianCityMaxFreq) {
+            this.canadianCityMaxFreq = vec.getCanadianCityFreq();
+        }
+    }
+
+    // Adds the vectors seen by `other` to this space.
+    public void merge(FeatureSpace other) {
+        this.westGermanPoliticianMaxCount = Math.max(
+            this.westGermanPoliticianMaxCount,
+            other.westGermanPoliticianMaxCount
+        );
+        this.canadianCityMaxFreq
+            = Math.max(this.canadianCityMaxFreq, other.canadianCityMaxFreq);
+    }
+
+    public int getWestGermanPoliticianMaxCount() {
+        return this.westGermanPoliticianMaxCount;
+    }
+
+    public float getCanadianCityMaxFreq() {
+        return this.canadianCityMaxFreq;
+    }
+}
@@ -0,0 +1,295 @@
+package com.example;
+
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+public class FeatureStore {
+
+    // Trigrams at or above this value hold a symbol, see
+    // FeatureVector.packTrigram().
+    static final int SYMBOL_GRAM = 1 << 24;
+
+    private static final Article.LABEL[] LABELS = Article.LABEL.values();
+
+    private int size;
+
+    // Label ordinals, -1 for the vectors without a label.
+    private byte[] labels;
+
+    private int[] westGermanPoliticianCounts;
+    private float[] canadianCityFreqs;
+    private long[] flags;
+    private int[] firstNumbers;
+    private int[] mostFrequentAcronyms;
+    private int[] firstCapitalizedWords;
+    private int[] firstCapitalizedWordLengths;
+
+    // Row i owns pool[offsets[i]] up to pool[offsets[i + 1]], kept sorted.
+    private int[] titleOffsets;
+    private int[] titlePool;
+    private int[] gramOffsets;
+    private int[] gramPool;
+
+    // Row i owns extractedValues[i * extractors.size()] onwards.
+    private FeatureExtractors extractors = FeatureExtractors.NONE;
+    private float[] extractedValues;
+
+    public FeatureStore(List<FeatureVector> vectors) {
+        this(vectors, null);
+    }
+
+    // For the stores that keep their rows elsewhere.
+    FeatureStore(int size) {
+        this.size = size;
+    }
+
+    // The symbols of the vectors, including those inside trigrams, are
+    // translated with `symbols` unless it is null.
+    FeatureStore(List<FeatureVector> vectors, IntUnaryOperator symbols) {
+        this.size = vectors.size();
+
+        this.labels = new byte[size];
+        this.westGermanPoliticianCounts = new int[size];
+        this.canadianCityFreqs = new float[size];
+        this.flags = new long[size];
+        this.firstNumbers = new int[size];
+        this.mostFrequentAcronyms = new int[size];
+        this.firstCapitalizedWords = new int[size];
+        this.firstCapitalizedWordLengths = new int[size];
+        this.titleOffsets = new int[size + 1];
+        this.gramOffsets = new int[size + 1];
+
+        int titleTotal = 0;
+        int gramTotal = 0;
+        for (FeatureVector vec : vectors) {
+            titleTotal += vec.getTitleSymbols().length;
+            gramTotal += vec.getFirstCapitalizedWordGrams().length;
+        }
+        this.titlePool = new int[titleTotal];
+        this.gramPool = new int[gramTotal];
+
+        if (size > 0) {
+            this.extractors = vectors.get(0).getExtractors();
+        }
+        int extractedCount = this.extractors.size();
+        this.extractedValues = new float[size * extractedCount];
+
+        for (int i = 0; i < size; ++i) {
+            FeatureVector vec = vectors.get(i);
+
+            this.labels[i] = encodeLabel(vec);
+            this.westGermanPoliticianCounts[i]
+                = vec.getWestGermanPoliticianCount();
+            this.canadianCityFreqs[i] = vec.getCanadianCityFreq();
+            this.flags[i] = vec.getFlags();
+            this.firstNumbers[i] = vec.getFirstNumberSymbol();
+            this.mostFrequentAcronyms[i] = vec.getMostFrequentAcronymSymbol();
+            this.firstCapitalizedWords[i]
+                = vec.getFirstCapitalizedWordSymbol();
+            this.firstCapitalizedWordLengths[i]
+                = vec.getFirstCapitalizedWordLength();
+
+            int[] titleSymbols = vec.getTitleSymbols();
+            if (symbols != null) {
+                titleSymbols = translateTitle(titleSymbols, symbols);
+            }
+            System.arraycopy(
+                titleSymbols,
+                0,
+                this.titlePool,
+                this.titleOffsets[i],
+                titleSymbols.length
+            );
+            this.titleOffsets[i + 1]
+                = this.titleOffsets[i] + titleSymbols.length;
+
+            int[] grams = vec.getFirstCapitalizedWordGrams();
+            if (symbols != null) {
+                grams = translateGrams(grams, symbols);
+            }
+            System.arraycopy(
+                grams,
+                0,
+                this.gramPool,
+                this.gramOffsets[i],
+                grams.length
+            );
+            this.gramOffsets[i + 1] = this.gramOffsets[i] + grams.length;
+
+            if (vec.getExtractors() != this.extractors) {
+                throw new IllegalArgumentException(
+                    "Vectors built with different feature extractors"
+                );
+            }
+            System.arraycopy(
+                vec.getExtractedValues(),
+                0,
+                this.extractedValues,
+                i * extractedCount,
+                extractedCount
+            );
+        }
+
+        if (symbols != null) {
+            for (int i = 0; i < size; ++i) {
+                this.firstNumbers[i] = symbols.applyAsInt(this.firstNumbers[i]);
+                this.mostFrequentAcronyms[i]
+                    = symbols.applyAsInt(this.mostFrequentAcronyms[i]);
+                this.firstCapitalizedWords[i]
+                    = symbols.applyAsInt(this.firstCapitalizedWords[i]);
+            }
+        }
+    }
+
+    static byte encodeLabel(FeatureVector vec) {
+        return vec.getLabel().isPresent()
+            ? (byte)vec.getLabel().get().ordinal()
+            : -1;
+    }
+
+    static int[] translateTitle(
+        int[] titleSymbols,
+        IntUnaryOperator symbols
+    ) {
+        int[] translated = new int[titleSymbols.length];
+        for (int i = 0; i < translated.length; ++i) {
+            translated[i] = symbols.applyAsInt(titleSymbols[i]);
+        }
+
+        return SortedInts.of(translated);
+    }
+
+    static int[] translateGrams(int[] grams, IntUnaryOperator symbols) {
+        int[] translated = grams.clone();
+        for (int i = 0; i < translated.length; ++i) {
+            if (translated[i] >= SYMBOL_GRAM) {
+                translated[i] = SYMBOL_GRAM
+                    + symbols.applyAsInt(translated[i] - SYMBOL_GRAM);
+            }
+        }
+
+        return SortedInts.of(translated);
+    }
+
+    // Encodes the vectors to be compared with the rows of this store, e.g.
+    // the testing vectors against the training store. Symbols and trigrams
+    // are global, so nothing needs to be shared any more.
+    public FeatureStore encode(List<FeatureVector> vectors) {
+        return new FeatureStore(vectors);
+    }
+
+    public int getSize() {
+        return this.size;
+    }
+
+    // Null for the vectors without a label.
+    public Article.LABEL getLabel(int row) {
+        int label = this.labels[row];
+        return (label < 0) ? null : LABELS[label];
+    }
+
+    // The number of rows of each label, by its ordinal.
+    public int[] getLabelCounts() {
+        int[] counts = new int[LABELS.length];
+        for (int row = 0; row < getSize(); ++row) {
+            Article.LABEL label = getLabel(row);
+            if (label != null) {
+                ++counts[label.ordinal()];
+            }
+        }
+
+        return counts;
+    }
+
+    public int getWestGermanPoliticianCount(int row) {
+        return this.westGermanPoliticianCounts[row];
+    }
+
+    public float getCanadianCityFreq(int row) {
+        return this.canadianCityFreqs[row];
+    }
+
+    public long getFlags(int row) {
+        return this.flags[row];
+    }
+
+    public int getFirstNumber(int row) {
+        return this.firstNumbers[row];
+    }
+
+    public int getMostFrequentAcronym(int row) {
+        return this.mostFrequentAcronyms[row];
+    }
+
+    public int getFirstCapitalizedWord(int row) {
+        return this.firstCapitalizedWords[row];
+    }
+
+    public int getFirstCapitalizedWordLength(int row) {
+        return this.firstCapitalizedWordLengths[row];
+    }
+
+    public int getTitleSize(int row) {
+        return this.titleOffsets[row + 1] - this.titleOffsets[row];
+    }
+
+    public int getGramCount(int row) {
+        return this.gramOffsets[row + 1] - this.gramOffsets[row];
+    }
+
+    // The extractors the values of the rows come from.
+    public FeatureExtractors getExtractors() {
+        return this.extractors;
+    }
+
+    public float getExtractedValue(int row, int index) {
+        return this.extractedValues[row * this.extractors.size() + index];
+    }
+
+    public int countCommonGrams(int row, FeatureStore queries, int query) {
+        return queries.countCommonGrams(
+            query,
+            this.gramPool,
+            this.gramOffsets[row],
+            this.gramOffsets[row + 1]
+        );
+    }
+
+    public int countCommonTitleTokens(
+        int row,
+        FeatureStore queries,
+        int query
+    ) {
+        return queries.countCommonTitleTokens(
+            query,
+            this.titlePool,
+            this.titleOffsets[row],
+            this.titleOffsets[row + 1]
+        );
+    }
+
+    // The trigrams of `row` also found in grams[from..to). Either side of a
+    // comparison may be a store that keeps its rows elsewhere, so each one
+    // hands its own row to the other as a plain slice.
+    int countCommonGrams(int row, int[] grams, int from, int to) {
+        return SortedInts.countCommon(
+            this.gramPool,
+            this.gramOffsets[row],
+            this.gramOffsets[row + 1],
+            grams,
+            from,
+            to
+        );
+    }
+
+    int countCommonTitleTokens(int row, int[] symbols, int from, int to) {
+        return SortedInts.countCommon(
+            this.titlePool,
+            this.titleOffsets[row],
+            this.titleOffsets[row + 1],
+            symbols,
+            from,
+            to
+        );
+    }
+}
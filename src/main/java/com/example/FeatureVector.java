@@ -1,17 +1,29 @@
 package com.example;
 
-import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
 import java.util.Map.Entry;
 
 public class FeatureVector {
 
+    public static final long FRENCH_BANK_BIT = 1L;
+    public static final long UK_ACRONYM_BIT = 1L << 1;
+    public static final long JAPANESE_COMPANY_BIT = 1L << 2;
+    public static final long USA_STATE_BIT = 1L << 3;
+    public static final int CAPITALS_SHIFT = 8;
+    public static final long CAPITALS_MASK = 0b111111L << CAPITALS_SHIFT;
+    public static final int CURRENCIES_SHIFT = 16;
+    public static final long CURRENCIES_MASK = 0b111111L << CURRENCIES_SHIFT;
+
+    private static final int EMPTY_SYMBOL = SymbolTable.getGlobal().intern("");
+    private static final int UK_SYMBOL = SymbolTable.getGlobal().intern("uk");
+
+    private static final short ALL_FEATURES = (short)0b1111111111111111;
+
     private int westGermanPoliticianCount;
     private float canadianCityFreq;
     private boolean frenchBank;
@@ -20,13 +32,23 @@ public class FeatureVector {
     private boolean usaState;
     private Map<Article.LABEL, Boolean> capitals;
     private Map<Article.LABEL, Boolean> currencies;
-    private String firstCapitalizedWord;
-    private String firstNumber;
-    private String mostFrequentAcronym;
+    private int firstCapitalizedWord;
+    private int firstCapitalizedWordLength;
+    private int firstNumber;
+    private int mostFrequentAcronym;
     private List<Token> title;
-    private Set<String> titleHashed;
+    private int[] titleSymbols;
 
-    private Set<String> firstCapitalizedWordGrams;
+    // Trigrams packed into ints, see packTrigram(), sorted and distinct.
+    private int[] firstCapitalizedWordGrams;
+
+    // The four presence flags and the capitals and currencies packed into
+    // a single word, see the *_BIT and *_MASK constants.
+    private long flags;
+
+    // The values of the extractors, in their order.
+    private FeatureExtractors extractors = FeatureExtractors.NONE;
+    private float[] extractedValues = new float[0];
 
     private Optional<Article.LABEL> label = Optional.empty();
 
@@ -63,8 +85,7 @@ public class FeatureVector {
         Dictionary dict,
         Optional<Article.LABEL> label
     ) {
-        this(content, title, dict);
-        this.label = label;
+        this(content, title, dict, label, ALL_FEATURES);
     }
 
     public FeatureVector(
@@ -72,107 +93,240 @@ public class FeatureVector {
         List<Token> title,
         Dictionary dict
     ) {
-        this.firstCapitalizedWord = "";
-        this.firstNumber = "";
-        this.mostFrequentAcronym = "";
+        this(content, title, dict, ALL_FEATURES);
+    }
+
+    public FeatureVector(
+        List<Token> content,
+        List<Token> title,
+        Dictionary dict,
+        Optional<Article.LABEL> label,
+        short featureFlags
+    ) {
+        this(content, title, dict, featureFlags);
+        this.label = label;
+    }
+
+    public FeatureVector(
+        List<Token> content,
+        List<Token> title,
+        Dictionary dict,
+        Optional<Article.LABEL> label,
+        short featureFlags,
+        FeatureExtractors extractors
+    ) {
+        this(content, title, dict, featureFlags, extractors);
+        this.label = label;
+    }
+
+    public FeatureVector(
+        List<Token> content,
+        List<Token> title,
+        Dictionary dict,
+        short featureFlags
+    ) {
+        this(content, title, dict, featureFlags, FeatureExtractors.NONE);
+    }
+
+    // Only extracts the features enabled in featureFlags; the others keep
+    // their empty values. Every gazetteer match that consumes tokens still
+    // decides which tokens the features after it get to see, so those
+    // scans are kept as long as any content feature is enabled. Only the
+    // lookups nothing else depends on are skipped.
+    //
+    // The extractors are fed every content token from within the same loop.
+    public FeatureVector(
+        List<Token> content,
+        List<Token> title,
+        Dictionary dict,
+        short featureFlags,
+        FeatureExtractors extractors
+    ) {
+        this.firstCapitalizedWord = EMPTY_SYMBOL;
+        this.firstNumber = EMPTY_SYMBOL;
+        this.mostFrequentAcronym = EMPTY_SYMBOL;
         this.capitals = new HashMap<>();
         this.currencies = new HashMap<>();
+        this.firstCapitalizedWordGrams = new int[0];
         this.title = title;
 
-        this.titleHashed = new HashSet<String>(title.size());
-        for (Token token : title) {
-            this.titleHashed.add(token.getValue());
-        }
+        this.titleSymbols = encodeTitle(title, featureFlags);
 
         for (Article.LABEL country : Article.LABEL.values()) {
             this.capitals.put(country, false);
             this.currencies.put(country, false);
         }
 
-        if (content.size() == 0) return;
+        this.extractors = extractors;
+        Object[] states = extractors.newStates();
+
+        if (content.size() == 0
+            || (featureFlags & ~FEATURE.TITLE.id) == 0) {
+
+            extractors.accept(states, content, 0, content.size());
+            this.extractedValues = extractors.getValues(states);
+            return;
+        }
+
+        boolean capitals = (featureFlags & FEATURE.CAPITALS_PRESENCE.id) != 0;
+        boolean currencies
+            = (featureFlags & FEATURE.CURRENCIES_PRESENCE.id) != 0;
+        boolean firstCapitalizedWordEnabled
+            = (featureFlags & FEATURE.FIRST_CAPITALIZED_WORD.id) != 0;
+        boolean firstNumberEnabled
+            = (featureFlags & FEATURE.FIRST_NUMBER.id) != 0;
+        boolean acronyms
+            = (featureFlags & FEATURE.MOST_FREQUENT_ACRONYM.id) != 0;
 
         int canadianCityNameCount = 0;
         int canadianCityTokenCount = 0;
+        String firstCapitalizedWord = "";
 
         Map<String, Integer> acronymCounts = new HashMap<>();
 
+        int politicians = dict.getCategory(
+            Dictionary.POLITICIANS, Article.LABEL.WEST_GERMANY
+        );
+        int canadianCities
+            = dict.getCategory(Dictionary.CITIES, Article.LABEL.CANADA);
+        int frenchBanks
+            = dict.getCategory(Dictionary.BANKS, Article.LABEL.FRANCE);
+        int japaneseCompanies
+            = dict.getCategory(Dictionary.COMPANIES, Article.LABEL.JAPAN);
+        int usaStates
+            = dict.getCategory(Dictionary.STATES, Article.LABEL.USA);
+        int[] capitalCategories = dict.getCategories(Dictionary.CAPITALS);
+        int[] currencyCategories = dict.getCategories(Dictionary.CURRENCIES);
+
+        // Every gazetteer lookup below reads the spans found by this one
+        // pass. A match of the first five categories consumes its tokens,
+        // which decides what every other content feature sees, so they are
+        // always looked for. The capitals and the currencies consume
+        // nothing and are only looked for when needed, the capitals for the
+        // currencies too.
+        BitSet scanned = new BitSet(dict.getCategoryCount());
+        setCategories(
+            scanned,
+            politicians,
+            canadianCities,
+            frenchBanks,
+            japaneseCompanies,
+            usaStates
+        );
+        if (capitals || currencies) {
+            setCategories(scanned, capitalCategories);
+        }
+        if (currencies) {
+            setCategories(scanned, currencyCategories);
+        }
+        GazetteerMatches matches = dict.scan(content, scanned);
+
+        // The tokens up to `fed` have been seen by the extractors, the ones
+        // consumed by a gazetteer match included.
+        int fed = 0;
+
         for (int i = 0; i < content.size(); ++i) {
-            int count = dict.isWestGermanyPolitician(content, i);
+            if (extractors.size() > 0) {
+                fed = extractors.accept(states, content, fed, i + 1);
+            }
+
+            int count = matches.getLength(i, politicians);
             if (count > 0) {
                 ++this.westGermanPoliticianCount;
                 i += count - 1;
                 continue;
             }
 
-            count = dict.isCanadianCity(content, i);
+            count = matches.getLength(i, canadianCities);
             if (count > 0) {
                 ++canadianCityNameCount;
                 canadianCityTokenCount += count;
                 i += count - 1;
-                if (dict.isCapitalOfCanada(content, i) > 0) {
+                if (capitals
+                    && matches.getLength(
+                        i, capitalCategories[Article.LABEL.CANADA.ordinal()]
+                    ) > 0) {
+
                     this.capitals.put(Article.LABEL.CANADA, true);
                     continue;
                 }
                 continue;
             }
 
-            count = dict.isFrenchBank(content, i);
+            count = matches.getLength(i, frenchBanks);
             if (count > 0) {
                 this.frenchBank = true;
                 i += count - 1;
                 continue;
             }
 
-            if (content.get(i).getValue().equals("uk")) {
+            if (content.get(i).getSymbol() == UK_SYMBOL) {
                 this.ukAcronym = true;
                 continue;
             }
 
-            count = dict.isJapaneseCompany(content, i);
+            count = matches.getLength(i, japaneseCompanies);
             if (count > 0) {
                 this.japaneseCompany = true;
                 i += count - 1;
                 continue;
             }
 
-            count = dict.isStateInUSA(content, i);
+            count = matches.getLength(i, usaStates);
             if (count > 0) {
                 this.usaState = true;
                 i += count - 1;
-                if (dict.isCapitalOfUSA(content, i) > 0) {
+                if (capitals
+                    && matches.getLength(
+                        i, capitalCategories[Article.LABEL.USA.ordinal()]
+                    ) > 0) {
+
                     this.capitals.put(Article.LABEL.USA, true);
                     continue;
                 }
                 continue;
             }
 
-            for (Article.LABEL country : Article.LABEL.values()) {
-                if (dict.isCapital(country, content, i) > 0) {
-                    this.capitals.put(country, true);
-                    continue;
-                }
-
-                if (dict.isCurrency(country, content, i) > 0) {
-                    this.currencies.put(country, true);
-                    continue;
+            // A currency is only looked for when the token is not a capital
+            // of the same country, so the capitals are looked up for the
+            // currencies too.
+            if (capitals || currencies) {
+                for (Article.LABEL country : Article.LABEL.values()) {
+                    int c = country.ordinal();
+                    if (matches.getLength(i, capitalCategories[c]) > 0) {
+
+                        if (capitals) {
+                            this.capitals.put(country, true);
+                        }
+                        continue;
+                    }
+
+                    if (currencies
+                        && matches.getLength(i, currencyCategories[c]) > 0) {
+
+                        this.currencies.put(country, true);
+                        continue;
+                    }
                 }
             }
 
             Token curr = content.get(i);
 
-            if (curr.getType() == Token.Type.CAPITALIZED_WORD
-                && this.firstCapitalizedWord.isEmpty()) {
+            if (firstCapitalizedWordEnabled
+                && curr.getType() == Token.Type.CAPITALIZED_WORD
+                && firstCapitalizedWord.isEmpty()) {
 
-                this.firstCapitalizedWord = curr.getValue();
+                firstCapitalizedWord = curr.getValue();
             }
 
-            if (curr.getType() == Token.Type.NUMBER
-                && this.firstNumber.isEmpty()) {
+            if (firstNumberEnabled
+                && curr.getType() == Token.Type.NUMBER
+                && this.firstNumber == EMPTY_SYMBOL) {
 
-                this.firstNumber = curr.getValue();
+                this.firstNumber = curr.internSymbol();
             }
 
-            if (curr.getType() == Token.Type.ACRONIM) {
+            if (acronyms && curr.getType() == Token.Type.ACRONIM) {
                 if (acronymCounts.containsKey(curr.getValue())) {
                     acronymCounts.put(
                         curr.getValue(),
@@ -184,17 +338,71 @@ public class FeatureVector {
             }
         }
 
+        extractors.accept(states, content, fed, content.size());
+        this.extractedValues = extractors.getValues(states);
+
         this.canadianCityFreq
             = (float)canadianCityNameCount
                 / (float)(content.size()
                     - (canadianCityTokenCount - canadianCityNameCount));
 
         if (acronymCounts.size() > 0) {
-            this.mostFrequentAcronym = getMostFrequentAcronym(acronymCounts);
+            this.mostFrequentAcronym = SymbolTable.getGlobal().intern(
+                getMostFrequentAcronym(acronymCounts)
+            );
         }
 
+        this.firstCapitalizedWord
+            = SymbolTable.getGlobal().intern(firstCapitalizedWord);
+        this.firstCapitalizedWordLength = firstCapitalizedWord.length();
         this.firstCapitalizedWordGrams
-            = generateNGrams(3, this.firstCapitalizedWord);
+            = generateTrigrams(firstCapitalizedWord);
+
+        this.flags = packFlags();
+    }
+
+    // Restores a vector written by ModelWriter from its extracted features.
+    FeatureVector(
+        int westGermanPoliticianCount,
+        float canadianCityFreq,
+        long flags,
+        String firstCapitalizedWord,
+        String firstNumber,
+        String mostFrequentAcronym,
+        List<Token> title,
+        Optional<Article.LABEL> label,
+        short featureFlags
+    ) {
+        SymbolTable symbols = SymbolTable.getGlobal();
+
+        this.westGermanPoliticianCount = westGermanPoliticianCount;
+        this.canadianCityFreq = canadianCityFreq;
+        this.frenchBank = (flags & FRENCH_BANK_BIT) != 0;
+        this.ukAcronym = (flags & UK_ACRONYM_BIT) != 0;
+        this.japaneseCompany = (flags & JAPANESE_COMPANY_BIT) != 0;
+        this.usaState = (flags & USA_STATE_BIT) != 0;
+        this.capitals = new HashMap<>();
+        this.currencies = new HashMap<>();
+        for (Article.LABEL country : Article.LABEL.values()) {
+            this.capitals.put(
+                country,
+                (flags & (1L << (CAPITALS_SHIFT + country.ordinal()))) != 0
+            );
+            this.currencies.put(
+                country,
+                (flags & (1L << (CURRENCIES_SHIFT + country.ordinal()))) != 0
+            );
+        }
+        this.firstCapitalizedWord = symbols.intern(firstCapitalizedWord);
+        this.firstCapitalizedWordLength = firstCapitalizedWord.length();
+        this.firstCapitalizedWordGrams
+            = generateTrigrams(firstCapitalizedWord);
+        this.firstNumber = symbols.intern(firstNumber);
+        this.mostFrequentAcronym = symbols.intern(mostFrequentAcronym);
+        this.title = title;
+        this.titleSymbols = encodeTitle(title, featureFlags);
+        this.flags = flags;
+        this.label = label;
     }
 
     public float getSimilarity(
@@ -203,95 +411,87 @@ public class FeatureVector {
         float canadianCityMaxFreq,
         short featureFlags
     ) {
-        List<Float> similarities = new ArrayList<>(FEATURE.values().length);
+        float sum = 0.0f;
+        int count = 0;
+
+        long diffFlags = this.flags ^ other.flags;
 
         if ((featureFlags & FEATURE.WEST_GERMAN_POLITICAL_COUNT.id) != 0) {
-            similarities.add(
+            sum = addSquaredSimilarityError(sum, 
                 1.0f - Math.abs(
                     this.getWestGermanPoliticianCount()
                     - other.getWestGermanPoliticianCount()
                 ) / (float)westGermanPoliticianMaxCount
             );
+            ++count;
         }
         if ((featureFlags & FEATURE.CANADIAN_CITY_FREQ.id) != 0) {
-            similarities.add(
+            sum = addSquaredSimilarityError(sum, 
                 1.0f - Math.abs(
                     this.getCanadianCityFreq() - other.getCanadianCityFreq()
                 ) / (float)canadianCityMaxFreq
             );
+            ++count;
         }
         if ((featureFlags & FEATURE.FRENCH_BANK_PRESENCE.id) != 0) {
-            similarities.add(
-                (this.isFrenchBankPresent() == other.isFrenchBankPresent())
-                    ? 1.0f : 0.0f
+            sum = addSquaredSimilarityError(sum, 
+                ((diffFlags & FRENCH_BANK_BIT) == 0) ? 1.0f : 0.0f
             );
+            ++count;
         }
         if ((featureFlags & FEATURE.UK_ACRONYM_PRESENCE.id) != 0) {
-            similarities.add(
-            (this.isUKAcronymPresent() == other.isUKAcronymPresent())
-                ? 1.0f : 0.0f
+            sum = addSquaredSimilarityError(sum, 
+                ((diffFlags & UK_ACRONYM_BIT) == 0) ? 1.0f : 0.0f
             );
+            ++count;
         }
         if ((featureFlags & FEATURE.JAPANESE_COMPANY_PRESENCE.id) != 0) {
-            similarities.add(
-                (this.isJapaneseCompanyPresent()
-                    == other.isJapaneseCompanyPresent())
-                        ? 1.0f : 0.0f
+            sum = addSquaredSimilarityError(sum, 
+                ((diffFlags & JAPANESE_COMPANY_BIT) == 0) ? 1.0f : 0.0f
             );
+            ++count;
         }
         if ((featureFlags & FEATURE.USA_STATE_PRESENCE.id) != 0) {
-            similarities.add(
-                (this.isUSAStatePresent() == other.isUSAStatePresent())
-                    ? 1.0f : 0.0f
+            sum = addSquaredSimilarityError(sum, 
+                ((diffFlags & USA_STATE_BIT) == 0) ? 1.0f : 0.0f
             );
+            ++count;
         }
         if ((featureFlags & FEATURE.CAPITALS_PRESENCE.id) != 0) {
-            similarities.add(
-                1.0f - getHammingDistance(this.capitals, other.capitals)
-                    / 6.0f
+            sum = addSquaredSimilarityError(sum, 
+                1.0f - getHammingDistance(diffFlags & CAPITALS_MASK) / 6.0f
             );
+            ++count;
         }
         if ((featureFlags & FEATURE.CURRENCIES_PRESENCE.id) != 0) {
-            similarities.add(
-                1.0f - getHammingDistance(this.currencies, other.currencies)
-                    / 6.0f
+            sum = addSquaredSimilarityError(sum, 
+                1.0f - getHammingDistance(diffFlags & CURRENCIES_MASK) / 6.0f
             );
+            ++count;
         }
         if ((featureFlags & FEATURE.FIRST_CAPITALIZED_WORD.id) != 0) {
-            similarities.add(
-                getGramsSimilarity(
-                    this.firstCapitalizedWordGrams,
-                    other.firstCapitalizedWordGrams,
-                    other.firstCapitalizedWord.length(),
-                    other.firstCapitalizedWord.length()
-                )
-            );
+            sum = addSquaredSimilarityError(sum, getGramsSimilarity(other));
+            ++count;
         }
         if ((featureFlags & FEATURE.FIRST_NUMBER.id) != 0) {
-            similarities.add(
-                (this.getFirstNumber().equals(other.getFirstNumber()))
-                    ? 1.0f : 0.0f
+            sum = addSquaredSimilarityError(sum, 
+                (this.firstNumber == other.firstNumber) ? 1.0f : 0.0f
             );
+            ++count;
         }
         if ((featureFlags & FEATURE.MOST_FREQUENT_ACRONYM.id) != 0) {
-            similarities.add(
-                (this.getMostFrequentAcronym()
-                    .equals(other.getMostFrequentAcronym()))
-                        ? 1.0f : 0.0f
+            sum = addSquaredSimilarityError(sum, 
+                (this.mostFrequentAcronym == other.mostFrequentAcronym)
+                    ? 1.0f : 0.0f
             );
+            ++count;
         }
         if ((featureFlags & FEATURE.TITLE.id) != 0) {
-            similarities.add(
-                getTitlesSimilarity(this.titleHashed, other.titleHashed)
-            );
+            sum = addSquaredSimilarityError(sum, getTitlesSimilarity(other));
+            ++count;
         }
 
-        float sum = 0.0f;
-        for (float diff : similarities) {
-            sum += Math.pow(diff - 1.0f, 2);
-        }
-
-        return 1.0f - (float)(Math.sqrt(sum) / Math.sqrt(similarities.size()));
+        return 1.0f - (float)(Math.sqrt(sum) / Math.sqrt(count));
     }
 
     public float getDistance(
@@ -301,111 +501,170 @@ public class FeatureVector {
         short featureFlags,
         METRIC metric
     ) {
-        List<Float> distances = new ArrayList<>(FEATURE.values().length);
+        return getDistance(
+            other,
+            westGermanPoliticianMaxCount,
+            canadianCityMaxFreq,
+            featureFlags,
+            metric,
+            Float.POSITIVE_INFINITY
+        );
+    }
+
+    // Gives up as soon as the distance is known to be greater than the
+    // cutoff and returns infinity in that case. The cheap components are
+    // accumulated first and the first capitalized word grams and the title
+    // are left for the end, but the returned distance is still summed in
+    // the declaration order of FEATURE, so any cutoff that is not exceeded
+    // gives exactly the same value.
+    public float getDistance(
+        FeatureVector other,
+        int westGermanPoliticianMaxCount,
+        float canadianCityMaxFreq,
+        short featureFlags,
+        METRIC metric,
+        float cutoff
+    ) {
+        float acc = 0.0f;
+        int count = 0;
+
+        long diffFlags = this.flags ^ other.flags;
 
         if ((featureFlags & FEATURE.WEST_GERMAN_POLITICAL_COUNT.id) != 0) {
-            distances.add(
+            acc = accumulate(
+                metric,
+                acc,
                 Math.abs(
                     this.getWestGermanPoliticianCount()
                     - other.getWestGermanPoliticianCount()
-                ) / (float)westGermanPoliticianMaxCount
+                ) / (float)westGermanPoliticianMaxCount,
+                count++
             );
         }
         if ((featureFlags & FEATURE.CANADIAN_CITY_FREQ.id) != 0) {
-            distances.add(
+            acc = accumulate(
+                metric,
+                acc,
                 Math.abs(
                     this.getCanadianCityFreq() - other.getCanadianCityFreq()
-                ) / (float)canadianCityMaxFreq
+                ) / (float)canadianCityMaxFreq,
+                count++
             );
         }
         if ((featureFlags & FEATURE.FRENCH_BANK_PRESENCE.id) != 0) {
-            distances.add(
-                (this.isFrenchBankPresent() == other.isFrenchBankPresent())
-                    ? 0.0f : 1.0f
+            acc = accumulate(
+                metric,
+                acc,
+                ((diffFlags & FRENCH_BANK_BIT) == 0) ? 0.0f : 1.0f,
+                count++
             );
         }
         if ((featureFlags & FEATURE.UK_ACRONYM_PRESENCE.id) != 0) {
-            distances.add(
-                (this.isUKAcronymPresent() == other.isUKAcronymPresent())
-                    ? 0.0f : 1.0f
+            acc = accumulate(
+                metric,
+                acc,
+                ((diffFlags & UK_ACRONYM_BIT) == 0) ? 0.0f : 1.0f,
+                count++
             );
         }
         if ((featureFlags & FEATURE.JAPANESE_COMPANY_PRESENCE.id) != 0) {
-            distances.add(
-                (this.isJapaneseCompanyPresent()
-                    == other.isJapaneseCompanyPresent())
-                        ? 0.0f : 1.0f
+            acc = accumulate(
+                metric,
+                acc,
+                ((diffFlags & JAPANESE_COMPANY_BIT) == 0) ? 0.0f : 1.0f,
+                count++
             );
         }
         if ((featureFlags & FEATURE.USA_STATE_PRESENCE.id) != 0) {
-            distances.add(
-                (this.isUSAStatePresent() == other.isUSAStatePresent())
-                    ? 0.0f : 1.0f
+            acc = accumulate(
+                metric,
+                acc,
+                ((diffFlags & USA_STATE_BIT) == 0) ? 0.0f : 1.0f,
+                count++
             );
         }
         if ((featureFlags & FEATURE.CAPITALS_PRESENCE.id) != 0) {
-            distances.add(
-                getHammingDistance(this.capitals, other.capitals) / 6.0f
+            acc = accumulate(
+                metric,
+                acc,
+                getHammingDistance(diffFlags & CAPITALS_MASK) / 6.0f,
+                count++
             );
         }
         if ((featureFlags & FEATURE.CURRENCIES_PRESENCE.id) != 0) {
-            distances.add(
-                getHammingDistance(this.currencies, other.currencies) / 6.0f
-            );
-        }
-        if ((featureFlags & FEATURE.FIRST_CAPITALIZED_WORD.id) != 0) {
-            distances.add(
-                1.0f - getGramsSimilarity(
-                    this.firstCapitalizedWordGrams,
-                    other.firstCapitalizedWordGrams,
-                    other.firstCapitalizedWord.length(),
-                    other.firstCapitalizedWord.length()
-                )
+            acc = accumulate(
+                metric,
+                acc,
+                getHammingDistance(diffFlags & CURRENCIES_MASK) / 6.0f,
+                count++
             );
         }
-        if ((featureFlags & FEATURE.FIRST_NUMBER.id) != 0) {
-            distances.add(
-                (this.getFirstNumber().equals(other.getFirstNumber()))
-                    ? 0.0f : 1.0f
-            );
+
+        if (exceeds(metric, acc, cutoff)) {
+            return Float.POSITIVE_INFINITY;
         }
-        if ((featureFlags & FEATURE.MOST_FREQUENT_ACRONYM.id) != 0) {
-            distances.add(
-                (this.getMostFrequentAcronym()
-                    .equals(other.getMostFrequentAcronym()))
-                        ? 0.0f : 1.0f
+
+        boolean hasFirstNumber
+            = (featureFlags & FEATURE.FIRST_NUMBER.id) != 0;
+        boolean hasMostFrequentAcronym
+            = (featureFlags & FEATURE.MOST_FREQUENT_ACRONYM.id) != 0;
+
+        float firstNumberDist = 0.0f;
+        float mostFrequentAcronymDist = 0.0f;
+
+        // Skipping the first capitalized word here only makes the partial
+        // result smaller, so it is still safe to compare with the cutoff.
+        float partial = acc;
+        int partialCount = count;
+        if (hasFirstNumber) {
+            firstNumberDist
+                = (this.firstNumber == other.firstNumber) ? 0.0f : 1.0f;
+            partial = accumulate(
+                metric, partial, firstNumberDist, partialCount++
             );
         }
-        if ((featureFlags & FEATURE.TITLE.id) != 0) {
-            distances.add(
-                1.0f - getTitlesSimilarity(this.titleHashed, other.titleHashed)
+        if (hasMostFrequentAcronym) {
+            mostFrequentAcronymDist
+                = (this.mostFrequentAcronym == other.mostFrequentAcronym)
+                    ? 0.0f : 1.0f;
+            partial = accumulate(
+                metric, partial, mostFrequentAcronymDist, partialCount++
             );
         }
 
-        if (metric == METRIC.EUCLIDEAN) {
-            float sum = 0.0f;
-            for (float diff : distances) {
-                sum += Math.pow(diff, 2);
-            }
+        if (exceeds(metric, partial, cutoff)) {
+            return Float.POSITIVE_INFINITY;
+        }
 
-            return (float)Math.sqrt(sum);
-        } else if (metric == METRIC.TAXICAB) {
-            float sum = 0.0f;
-            for (float diff : distances) {
-                sum += Math.abs(diff);
-            }
+        if ((featureFlags & FEATURE.FIRST_CAPITALIZED_WORD.id) != 0) {
+            acc = accumulate(
+                metric,
+                acc,
+                1.0f - getGramsSimilarity(other),
+                count++
+            );
+        }
+        if (hasFirstNumber) {
+            acc = accumulate(metric, acc, firstNumberDist, count++);
+        }
+        if (hasMostFrequentAcronym) {
+            acc = accumulate(metric, acc, mostFrequentAcronymDist, count++);
+        }
 
-            return sum;
-        } else {
-            float max_dist = distances.getFirst();
-            for (float diff: distances) {
-                if (diff > max_dist) {
-                    max_dist = diff;
-                }
+        if ((featureFlags & FEATURE.TITLE.id) != 0) {
+            if (exceeds(metric, acc, cutoff)) {
+                return Float.POSITIVE_INFINITY;
             }
 
-            return max_dist;
+            acc = accumulate(
+                metric,
+                acc,
+                1.0f - getTitlesSimilarity(other),
+                count++
+            );
         }
+
+        return (metric == METRIC.EUCLIDEAN) ? (float)Math.sqrt(acc) : acc;
     }
 
     public int getWestGermanPoliticianCount() {
@@ -480,15 +739,39 @@ public class FeatureVector {
         return this.currencies.getOrDefault(Article.LABEL.JAPAN, false);
     }
 
+    public boolean isCapitalPresent(Article.LABEL country) {
+        return this.capitals.getOrDefault(country, false);
+    }
+
+    public boolean isCurrencyPresent(Article.LABEL country) {
+        return this.currencies.getOrDefault(country, false);
+    }
+
     public String getFirstCapitalizedWord() {
+        return SymbolTable.getGlobal().getValue(this.firstCapitalizedWord);
+    }
+
+    public int getFirstCapitalizedWordSymbol() {
         return this.firstCapitalizedWord;
     }
 
+    public int getFirstCapitalizedWordLength() {
+        return this.firstCapitalizedWordLength;
+    }
+
     public String getFirstNumber() {
+        return SymbolTable.getGlobal().getValue(this.firstNumber);
+    }
+
+    public int getFirstNumberSymbol() {
         return this.firstNumber;
     }
 
     public String getMostFrequentAcronym() {
+        return SymbolTable.getGlobal().getValue(this.mostFrequentAcronym);
+    }
+
+    public int getMostFrequentAcronymSymbol() {
         return this.mostFrequentAcronym;
     }
 
@@ -496,17 +779,36 @@ public class FeatureVector {
         return this.title;
     }
 
+    // Symbols of the distinct title tokens, in increasing order.
+    public int[] getTitleSymbols() {
+        return this.titleSymbols;
+    }
+
+    public int[] getFirstCapitalizedWordGrams() {
+        return this.firstCapitalizedWordGrams;
+    }
+
+    public long getFlags() {
+        return this.flags;
+    }
+
     public Optional<Article.LABEL> getLabel() {
         return this.label;
     }
 
+    public FeatureExtractors getExtractors() {
+        return this.extractors;
+    }
+
+    public float[] getExtractedValues() {
+        return this.extractedValues;
+    }
+
     public static class SimilarityComparator
         implements Comparator<FeatureVector> {
 
         FeatureVector vector;
-        int westGermanPoliticianMaxCount;
-        float canadianCityMaxFreq;
-        short featureFlags;
+        DistanceKernel kernel;
 
         public SimilarityComparator(
             FeatureVector vector,
@@ -515,19 +817,18 @@ public class FeatureVector {
             short featureFlags
         ) {
             this.vector = vector;
-            this.westGermanPoliticianMaxCount = westGermanPoliticianMaxCount;
-            this.canadianCityMaxFreq = canadianCityMaxFreq;
-            this.featureFlags = featureFlags;
+            this.kernel = DistanceKernel.compile(
+                featureFlags,
+                METRIC.EUCLIDEAN,
+                westGermanPoliticianMaxCount,
+                canadianCityMaxFreq
+            );
         }
 
         @Override
         public int compare(FeatureVector v1, FeatureVector v2) {
-            int np = this.westGermanPoliticianMaxCount;
-            float cf = this.canadianCityMaxFreq;
-            short ff = this.featureFlags;
-
-            float s1 = this.vector.getSimilarity(v1, np, cf, ff);
-            float s2 = this.vector.getSimilarity(v2, np, cf, ff);
+            float s1 = this.kernel.getSimilarity(this.vector, v1);
+            float s2 = this.kernel.getSimilarity(this.vector, v2);
 
             if (s1 > s2) {
                 return -1;
@@ -543,10 +844,7 @@ public class FeatureVector {
         implements Comparator<FeatureVector> {
 
         FeatureVector vector;
-        int westGermanPoliticianMaxCount;
-        float canadianCityMaxFreq;
-        short featureFlags;
-        METRIC metric;
+        DistanceKernel kernel;
 
         public DistanceComparator(
             FeatureVector vector,
@@ -555,21 +853,26 @@ public class FeatureVector {
             short featureFlags,
             METRIC metric
         ) {
+            this(
+                vector,
+                DistanceKernel.compile(
+                    featureFlags,
+                    metric,
+                    westGermanPoliticianMaxCount,
+                    canadianCityMaxFreq
+                )
+            );
+        }
+
+        public DistanceComparator(FeatureVector vector, DistanceKernel kernel) {
             this.vector = vector;
-            this.westGermanPoliticianMaxCount = westGermanPoliticianMaxCount;
-            this.canadianCityMaxFreq = canadianCityMaxFreq;
-            this.featureFlags = featureFlags;
-            this.metric = metric;
+            this.kernel = kernel;
         }
 
         @Override
         public int compare(FeatureVector v1, FeatureVector v2) {
-            int np = this.westGermanPoliticianMaxCount;
-            float cf = this.canadianCityMaxFreq;
-            short ff = this.featureFlags;
-
-            float s1 = this.vector.getDistance(v1, np, cf, ff, metric);
-            float s2 = this.vector.getDistance(v2, np, cf, ff, metric);
+            float s1 = this.kernel.getDistance(this.vector, v1);
+            float s2 = this.kernel.getDistance(this.vector, v2);
 
             if (s1 < s2) {
                 return -1;
@@ -600,66 +903,141 @@ public class FeatureVector {
         return most_frequent;
     }
 
-    private static int getHammingDistance(
-        Map<Article.LABEL, Boolean> m1,
-        Map<Article.LABEL, Boolean> m2
-    ) {
-        assert(m1.keySet().equals(m2.keySet()));
+    // Unknown categories, of id -1, are left out.
+    private static void setCategories(BitSet set, int... categories) {
+        for (int category : categories) {
+            if (category >= 0) {
+                set.set(category);
+            }
+        }
+    }
+
+    private long packFlags() {
+        long flags = 0;
 
-        int dist = 0;
+        if (this.frenchBank) flags |= FRENCH_BANK_BIT;
+        if (this.ukAcronym) flags |= UK_ACRONYM_BIT;
+        if (this.japaneseCompany) flags |= JAPANESE_COMPANY_BIT;
+        if (this.usaState) flags |= USA_STATE_BIT;
 
-        for (Article.LABEL key : m1.keySet()) {
-            if (!m1.get(key).equals(m2.get(key))) {
-                dist += 1;
+        for (Article.LABEL country : Article.LABEL.values()) {
+            if (this.capitals.getOrDefault(country, false)) {
+                flags |= 1L << (CAPITALS_SHIFT + country.ordinal());
+            }
+            if (this.currencies.getOrDefault(country, false)) {
+                flags |= 1L << (CURRENCIES_SHIFT + country.ordinal());
             }
         }
 
-        return dist;
+        return flags;
     }
 
-    private static Set<String> generateNGrams(int N, String input) {
-        int init_capacity = input.length() - 2;
-        if (init_capacity <= 0) return new HashSet<>();
-
-        Set<String> output = new HashSet<>(init_capacity);
-        int maxStartIndex = (input.length() == N) ? 1 : input.length() - N;
+    static float accumulate(
+        METRIC metric,
+        float acc,
+        float diff,
+        int index
+    ) {
+        if (metric == METRIC.EUCLIDEAN) {
+            return (float)(acc + (double)diff * (double)diff);
+        } else if (metric == METRIC.TAXICAB) {
+            return acc + Math.abs(diff);
+        } else {
+            return (index == 0 || diff > acc) ? diff : acc;
+        }
+    }
 
-        for (int i = 0; i < maxStartIndex; ++i) {
-            output.add(input.substring(i, i + N));
+    static boolean exceeds(METRIC metric, float acc, float cutoff) {
+        if (metric == METRIC.EUCLIDEAN) {
+            // The square root is rounded, so only a sum of squares above the
+            // square of the next float is guaranteed to end up past the
+            // cutoff.
+            double bound = Math.nextUp(cutoff);
+            return acc > bound * bound;
         }
 
-        return output;
+        return acc > cutoff;
     }
 
-    private static float getGramsSimilarity(
-        Set<String> g1,
-        Set<String> g2,
-        int s1len,
-        int s2len
+    // Same as sum += Math.pow(similarity - 1.0f, 2), as the square is exact
+    // for a float.
+    private static float addSquaredSimilarityError(
+        float sum,
+        float similarity
     ) {
-        if (s1len == 0 && s2len == 0) return 1.0f;
-        else if (s1len < 3 || s2len < 3) return 0.0f;
+        double error = similarity - 1.0f;
+        return (float)(sum + error * error);
+    }
 
-        int sum = 0;
+    private static int getHammingDistance(long bits) {
+        return Long.bitCount(bits);
+    }
 
-        int len = (s1len > s2len) ? s1len : s2len;
+    private static int[] encodeTitle(List<Token> title, short featureFlags) {
+        if ((featureFlags & FEATURE.TITLE.id) == 0) {
+            return new int[0];
+        }
 
-        for (String gram : g1) {
-            if (g2.contains(gram)) sum += 1;
+        int[] symbols = new int[title.size()];
+        for (int i = 0; i < symbols.length; ++i) {
+            symbols[i] = title.get(i).internSymbol();
         }
 
-        return (1.0f / (float)(len - 2)) * (float)sum;
+        return SortedInts.of(symbols);
     }
 
-    private static float getTitlesSimilarity(Set<String> t1, Set<String> t2) {
-        int sum = 0;
+    // Stops one trigram short of the end of words longer than three
+    // characters, as the original n-gram generation did; the results of the
+    // existing evaluation runs depend on it.
+    private static int[] generateTrigrams(String input) {
+        if (input.length() < 3) return new int[0];
+
+        int maxStartIndex = (input.length() == 3) ? 1 : input.length() - 3;
+        int[] grams = new int[maxStartIndex];
 
-        for (String s : t1) {
-            if (t2.contains(s)) sum += 1;
+        for (int i = 0; i < maxStartIndex; ++i) {
+            grams[i] = packTrigram(input, i);
         }
 
-        int t1len = t1.size();
-        int t2len = t2.size();
+        return SortedInts.of(grams);
+    }
+
+    // The corpus is ASCII, so a trigram normally fits in the low 24 bits.
+    // Any other trigram is interned and moved above them instead.
+    static int packTrigram(String input, int start) {
+        char c0 = input.charAt(start);
+        char c1 = input.charAt(start + 1);
+        char c2 = input.charAt(start + 2);
+
+        if ((c0 | c1 | c2) <= 0xFF) {
+            return (c0 << 16) | (c1 << 8) | c2;
+        }
+
+        return (1 << 24) + SymbolTable.getGlobal().intern(
+            input.substring(start, start + 3)
+        );
+    }
+
+    // Both lengths are taken from the other vector on purpose, the results
+    // of the existing evaluation runs depend on it.
+    float getGramsSimilarity(FeatureVector other) {
+        int len = other.firstCapitalizedWordLength;
+
+        if (len == 0) return 1.0f;
+        else if (len < 3) return 0.0f;
+
+        int sum = SortedInts.countCommon(
+            this.firstCapitalizedWordGrams, other.firstCapitalizedWordGrams
+        );
+
+        return (1.0f / (float)(len - 2)) * (float)sum;
+    }
+
+    float getTitlesSimilarity(FeatureVector other) {
+        int sum = SortedInts.countCommon(this.titleSymbols, other.titleSymbols);
+
+        int t1len = this.titleSymbols.length;
+        int t2len = other.titleSymbols.length;
         int len = (t1len > t2len) ? t1len : t2len;
 
         if (t1len == 0 && t2len == 0) return 1.0f;
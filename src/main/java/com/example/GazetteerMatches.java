@@ -0,0 +1,88 @@
+package com.example;
+
+import java.util.Arrays;
+
+// Every gazetteer match in a list of tokens, as found by Dictionary.scan():
+// span i starts at token getStart(i), is getLength(i) tokens long and is
+// an entry of the category with id getCategory(i), see
+// Dictionary.getCategory(). The spans are ordered by their start, and
+// there is at most one per category at a position, the same one the
+// Dictionary.is*() lookups return.
+public class GazetteerMatches {
+
+    // The spans starting at token p are offsets[p] up to offsets[p + 1].
+    private int[] offsets;
+
+    private int[] starts;
+    private int[] categories;
+    private int[] lengths;
+    private int size;
+
+    GazetteerMatches(int tokenCount) {
+        this.offsets = new int[tokenCount + 1];
+        this.starts = new int[8];
+        this.categories = new int[8];
+        this.lengths = new int[8];
+    }
+
+    // Spans must be added by increasing start.
+    void add(int start, int category, int length) {
+        if (this.size == this.starts.length) {
+            int capacity = 2 * this.size;
+            this.starts = Arrays.copyOf(this.starts, capacity);
+            this.categories = Arrays.copyOf(this.categories, capacity);
+            this.lengths = Arrays.copyOf(this.lengths, capacity);
+        }
+
+        this.starts[this.size] = start;
+        this.categories[this.size] = category;
+        this.lengths[this.size] = length;
+        ++this.size;
+
+        this.offsets[start + 1] = this.size;
+    }
+
+    // Closes the offsets of the positions without any span.
+    void finish() {
+        for (int p = 1; p < this.offsets.length; ++p) {
+            if (this.offsets[p] < this.offsets[p - 1]) {
+                this.offsets[p] = this.offsets[p - 1];
+            }
+        }
+    }
+
+    public int getSize() {
+        return this.size;
+    }
+
+    public int getStart(int span) {
+        return this.starts[span];
+    }
+
+    public int getCategory(int span) {
+        return this.categories[span];
+    }
+
+    public int getLength(int span) {
+        return this.lengths[span];
+    }
+
+    // The length of the entry of `category` starting at token `pos`, or 0,
+    // as the matching Dictionary.is*() lookup would return. Unknown
+    // categories, of id -1, have no entries.
+    public int getLength(int pos, int category) {
+        if (pos < 0 || pos + 1 >= this.offsets.length) {
+            return 0;
+        }
+
+        for (int span = this.offsets[pos]; span < this.offsets[pos + 1];
+            ++span) {
+
+            if (this.categories[span] == category) {
+                return this.lengths[span];
+            }
+        }
+
+        return 0;
+    }
+}
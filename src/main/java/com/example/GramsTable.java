@@ -0,0 +1,100 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The first capitalized word component for every pair of the most common
+// distinct first capitalized words, so that DistanceKernel can look it up
+// instead of intersecting the trigrams. Words are found by their symbol;
+// rarer words than the table has room for are left to the kernel.
+public class GramsTable {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 22;
+
+    public static final float MISSING = -1.0f;
+
+    private int[] slots;
+    private int slotCount;
+    private float[] distances;
+
+    public GramsTable(List<FeatureStore> stores) {
+        this(stores, DEFAULT_MAX_ENTRIES);
+    }
+
+    public GramsTable(List<FeatureStore> stores, int maxEntries) {
+        // For each distinct word: its symbol, the store and the row of its
+        // first occurrence, and the number of rows holding it.
+        Map<Integer, int[]> words = new HashMap<>();
+        int maxSymbol = -1;
+
+        for (int s = 0; s < stores.size(); ++s) {
+            FeatureStore store = stores.get(s);
+            for (int row = 0; row < store.getSize(); ++row) {
+                int symbol = store.getFirstCapitalizedWord(row);
+                int[] word = words.get(symbol);
+                if (word == null) {
+                    words.put(symbol, new int[] { symbol, s, row, 1 });
+                    maxSymbol = Math.max(maxSymbol, symbol);
+                } else {
+                    ++word[3];
+                }
+            }
+        }
+
+        List<int[]> sorted = new ArrayList<>(words.values());
+        sorted.sort((w1, w2) -> (w1[3] != w2[3])
+            ? Integer.compare(w2[3], w1[3])
+            : Integer.compare(w1[0], w2[0]));
+
+        this.slotCount = Math.min(
+            sorted.size(), (int)Math.sqrt(Math.max(maxEntries, 0))
+        );
+        this.slots = new int[maxSymbol + 1];
+        Arrays.fill(this.slots, -1);
+        for (int i = 0; i < this.slotCount; ++i) {
+            this.slots[sorted.get(i)[0]] = i;
+        }
+
+        this.distances = new float[this.slotCount * this.slotCount];
+        for (int q = 0; q < this.slotCount; ++q) {
+            int[] query = sorted.get(q);
+            FeatureStore queries = stores.get(query[1]);
+
+            for (int r = 0; r < this.slotCount; ++r) {
+                int[] word = sorted.get(r);
+                FeatureStore store = stores.get(word[1]);
+
+                this.distances[q * this.slotCount + r]
+                    = DistanceKernel.getGramsDistance(
+                        store.countCommonGrams(word[2], queries, query[2]),
+                        store.getFirstCapitalizedWordLength(word[2])
+                    );
+            }
+        }
+    }
+
+    public int getWordCount() {
+        return this.slotCount;
+    }
+
+    // Distance between the first capitalized words of a query and of a row,
+    // or MISSING when either of them did not fit in the table.
+    public float getDistance(int querySymbol, int rowSymbol) {
+        if (querySymbol >= this.slots.length
+            || rowSymbol >= this.slots.length) {
+
+            return MISSING;
+        }
+
+        int q = this.slots[querySymbol];
+        int r = this.slots[rowSymbol];
+        if (q < 0 || r < 0) {
+            return MISSING;
+        }
+
+        return this.distances[q * this.slotCount + r];
+    }
+}
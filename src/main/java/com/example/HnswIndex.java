@@ -0,0 +1,395 @@
+package com.example;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Approximate k-NN index over the rows of a FeatureStore, a hierarchical
+// navigable small world graph. Every row is linked to about M of its
+// nearest rows on each of its layers (2M on the bottom one), and a search
+// descends greedily through the sparse upper layers before exploring the
+// bottom layer with a beam of efSearch candidates. Unlike VantagePointTree
+// it does not need a true metric.
+public class HnswIndex {
+
+    private static final int MAX_LEVEL = 16;
+
+    private FeatureStore store;
+    private DistanceKernel kernel;
+
+    private int M;
+    private int efConstruction;
+    private int efSearch;
+
+    // links[row][level] holds linkCounts[row][level] neighbouring rows.
+    private int[][][] links;
+    private int[][] linkCounts;
+
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    private ThreadLocal<Scratch> scratch
+        = ThreadLocal.withInitial(() -> new Scratch());
+
+    public HnswIndex(
+        FeatureStore store,
+        DistanceKernel kernel,
+        int M,
+        int efConstruction,
+        int efSearch
+    ) {
+        assert(M > 1 && efConstruction > 0 && efSearch > 0);
+
+        this.store = store;
+        this.kernel = kernel;
+        this.M = M;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+
+        int size = store.getSize();
+        this.links = new int[size][][];
+        this.linkCounts = new int[size][];
+
+        Random rnd = new Random(1337);
+        double levelScale = 1.0 / Math.log(M);
+        Scratch s = this.scratch.get();
+
+        for (int row = 0; row < size; ++row) {
+            int level = (int)(-Math.log(1.0 - rnd.nextDouble()) * levelScale);
+            insert(row, Math.min(level, MAX_LEVEL), s);
+        }
+    }
+
+    public int getM() {
+        return this.M;
+    }
+
+    public int getEfConstruction() {
+        return this.efConstruction;
+    }
+
+    public int getEfSearch() {
+        return this.efSearch;
+    }
+
+    public void setEfSearch(int efSearch) {
+        assert(efSearch > 0);
+
+        this.efSearch = efSearch;
+    }
+
+    // Offers the approximately nearest rows of `store` to the heap and
+    // returns the number of distances that had to be evaluated. Safe to call
+    // from several threads at once.
+    public int search(FeatureStore queries, int query, NeighbourHeap heap) {
+        if (this.entryPoint < 0) {
+            return 0;
+        }
+
+        Scratch s = this.scratch.get();
+        s.evaluations = 0;
+
+        int ep = this.entryPoint;
+        for (int level = this.maxLevel; level > 0; --level) {
+            searchLayer(queries, query, ep, 1, level, s);
+            ep = s.resultIndices[0];
+        }
+
+        int count = searchLayer(
+            queries,
+            query,
+            ep,
+            Math.max(this.efSearch, heap.getCapacity()),
+            0,
+            s
+        );
+        for (int i = 0; i < count; ++i) {
+            heap.offer(s.resultIndices[i], s.resultDistances[i]);
+        }
+
+        return s.evaluations;
+    }
+
+    private void insert(int row, int level, Scratch s) {
+        this.links[row] = new int[level + 1][];
+        this.linkCounts[row] = new int[level + 1];
+        for (int l = 0; l <= level; ++l) {
+            this.links[row][l] = new int[getMaxLinks(l)];
+        }
+
+        if (this.entryPoint < 0) {
+            this.entryPoint = row;
+            this.maxLevel = level;
+            return;
+        }
+
+        int ep = this.entryPoint;
+        for (int l = this.maxLevel; l > level; --l) {
+            searchLayer(this.store, row, ep, 1, l, s);
+            ep = s.resultIndices[0];
+        }
+
+        for (int l = Math.min(level, this.maxLevel); l >= 0; --l) {
+            int count = searchLayer(
+                this.store, row, ep, this.efConstruction, l, s
+            );
+            ep = s.resultIndices[0];
+
+            int selected = selectNeighbours(
+                s.resultIndices,
+                s.resultDistances,
+                count,
+                this.M,
+                this.links[row][l]
+            );
+            this.linkCounts[row][l] = selected;
+
+            for (int i = 0; i < selected; ++i) {
+                addLink(this.links[row][l][i], row, l);
+            }
+        }
+
+        if (level > this.maxLevel) {
+            this.entryPoint = row;
+            this.maxLevel = level;
+        }
+    }
+
+    // Beam search of one layer starting from `ep`. Leaves the ef nearest
+    // rows found in s.resultIndices/s.resultDistances, nearest first, and
+    // returns their count.
+    private int searchLayer(
+        FeatureStore queries,
+        int query,
+        int ep,
+        int ef,
+        int level,
+        Scratch s
+    ) {
+        NeighbourHeap results = s.getResults(ef);
+        s.newVisit();
+        s.candidateCount = 0;
+
+        float d = getDistance(queries, query, ep, Float.POSITIVE_INFINITY, s);
+        s.visited[ep] = s.visit;
+        s.pushCandidate(ep, d);
+        results.offer(ep, d);
+
+        while (s.candidateCount > 0) {
+            int c = s.candidateIndices[0];
+            if (s.candidateDistances[0] > results.getWorstDistance()) {
+                break;
+            }
+            s.popCandidate();
+
+            int[] neighbours = this.links[c][level];
+            int neighbourCount = this.linkCounts[c][level];
+            for (int i = 0; i < neighbourCount; ++i) {
+                int e = neighbours[i];
+                if (s.visited[e] == s.visit) {
+                    continue;
+                }
+                s.visited[e] = s.visit;
+
+                float de = getDistance(
+                    queries, query, e, results.getWorstDistance(), s
+                );
+                if (results.offer(e, de)) {
+                    s.pushCandidate(e, de);
+                }
+            }
+        }
+
+        return results.drainSorted(s.resultIndices, s.resultDistances);
+    }
+
+    // Keeps a candidate only if it is closer to the row than to any of the
+    // neighbours kept so far, which spreads the links in all directions.
+    // Falls back to the nearest skipped candidates to fill up the list.
+    private int selectNeighbours(
+        int[] candidates,
+        float[] distances,
+        int count,
+        int max,
+        int[] out
+    ) {
+        int selected = 0;
+        int skipped = 0;
+        int[] skippedIndices = new int[count];
+
+        for (int i = 0; i < count && selected < max; ++i) {
+            boolean keep = true;
+            for (int j = 0; j < selected; ++j) {
+                float d = this.kernel.getDistance(
+                    this.store, out[j], this.store, candidates[i], distances[i]
+                );
+                if (d < distances[i]) {
+                    keep = false;
+                    break;
+                }
+            }
+
+            if (keep) {
+                out[selected++] = candidates[i];
+            } else {
+                skippedIndices[skipped++] = candidates[i];
+            }
+        }
+
+        for (int i = 0; i < skipped && selected < max; ++i) {
+            out[selected++] = skippedIndices[i];
+        }
+
+        return selected;
+    }
+
+    private void addLink(int node, int row, int level) {
+        int[] neighbours = this.links[node][level];
+        int count = this.linkCounts[node][level];
+
+        if (count < neighbours.length) {
+            neighbours[count] = row;
+            ++this.linkCounts[node][level];
+            return;
+        }
+
+        // The list is full, so it is pruned back down together with the new
+        // row, sorted by distance with the index breaking ties.
+        int[] candidates = Arrays.copyOf(neighbours, count + 1);
+        float[] distances = new float[count + 1];
+        candidates[count] = row;
+
+        for (int i = 0; i <= count; ++i) {
+            int candidate = candidates[i];
+            float distance = this.kernel.getDistance(
+                this.store, node, this.store, candidate,
+                Float.POSITIVE_INFINITY
+            );
+
+            int j = i;
+            while (j > 0
+                && (distances[j - 1] > distance
+                    || (distances[j - 1] == distance
+                        && candidates[j - 1] > candidate))) {
+                candidates[j] = candidates[j - 1];
+                distances[j] = distances[j - 1];
+                --j;
+            }
+            candidates[j] = candidate;
+            distances[j] = distance;
+        }
+
+        this.linkCounts[node][level] = selectNeighbours(
+            candidates, distances, count + 1, neighbours.length, neighbours
+        );
+    }
+
+    private float getDistance(
+        FeatureStore queries,
+        int query,
+        int row,
+        float cutoff,
+        Scratch s
+    ) {
+        ++s.evaluations;
+        return this.kernel.getDistance(queries, query, this.store, row, cutoff);
+    }
+
+    private int getMaxLinks(int level) {
+        return (level == 0) ? 2 * this.M : this.M;
+    }
+
+    // Per-thread search buffers: the visited marks are stamped with a visit
+    // number instead of being cleared, and the candidates form a min-heap.
+    private class Scratch {
+
+        private int[] visited = new int[store.getSize()];
+        private int visit = 0;
+
+        private int[] candidateIndices = new int[16];
+        private float[] candidateDistances = new float[16];
+        private int candidateCount = 0;
+
+        private NeighbourHeap nearest = new NeighbourHeap(1);
+        private NeighbourHeap results;
+        private int[] resultIndices = new int[0];
+        private float[] resultDistances = new float[0];
+
+        private int evaluations;
+
+        private NeighbourHeap getResults(int capacity) {
+            NeighbourHeap heap = this.results;
+            if (capacity == 1) {
+                heap = this.nearest;
+            } else if (this.results == null
+                || this.results.getCapacity() != capacity) {
+
+                this.results = new NeighbourHeap(capacity);
+                heap = this.results;
+            }
+            if (this.resultIndices.length < capacity) {
+                this.resultIndices = new int[capacity];
+                this.resultDistances = new float[capacity];
+            }
+
+            heap.clear();
+            return heap;
+        }
+
+        private void newVisit() {
+            if (++this.visit == 0) {
+                Arrays.fill(this.visited, 0);
+                this.visit = 1;
+            }
+        }
+
+        private void pushCandidate(int index, float distance) {
+            if (this.candidateCount == this.candidateIndices.length) {
+                this.candidateIndices = Arrays.copyOf(
+                    this.candidateIndices, 2 * this.candidateCount
+                );
+                this.candidateDistances = Arrays.copyOf(
+                    this.candidateDistances, 2 * this.candidateCount
+                );
+            }
+
+            int i = this.candidateCount++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (this.candidateDistances[parent] <= distance) break;
+
+                this.candidateIndices[i] = this.candidateIndices[parent];
+                this.candidateDistances[i] = this.candidateDistances[parent];
+                i = parent;
+            }
+            this.candidateIndices[i] = index;
+            this.candidateDistances[i] = distance;
+        }
+
+        private void popCandidate() {
+            int end = --this.candidateCount;
+            int index = this.candidateIndices[end];
+            float distance = this.candidateDistances[end];
+
+            int i = 0;
+            while (true) {
+                int child = 2*i + 1;
+                if (child >= end) break;
+
+                if (child + 1 < end
+                    && this.candidateDistances[child + 1]
+                        < this.candidateDistances[child]) {
+                    ++child;
+                }
+                if (this.candidateDistances[child] >= distance) break;
+
+                this.candidateIndices[i] = this.candidateIndices[child];
+                this.candidateDistances[i] = this.candidateDistances[child];
+                i = child;
+            }
+            if (end > 0) {
+                this.candidateIndices[i] = index;
+                this.candidateDistances[i] = distance;
+            }
+        }
+    }
+}
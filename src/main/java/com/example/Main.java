@@ -2,6 +2,8 @@ package com.example;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -24,7 +26,8 @@ public class Main
             .longOpt("neighbour-count")
             .argName("neighbour-count")
             .hasArg()
-            .desc("Set the number of neighbours used in k-NN algorithm")
+            .desc("Set the number of neighbours used in k-NN algorithm,"
+                + " or a comma-separated list of them")
             .build();
         options.addOption(neighbourCount);
 
@@ -50,6 +53,131 @@ public class Main
             .build();
         options.addOption(metric);
 
+        Option threads = Option.builder("t")
+            .longOpt("threads")
+            .argName("threads")
+            .hasArg()
+            .desc("Set the number of threads used when classifying")
+            .build();
+        options.addOption(threads);
+
+        Option index = Option.builder("i")
+            .longOpt("index")
+            .argName("index")
+            .hasArg()
+            .desc("Set the index used to find the nearest neighbours")
+            .build();
+        options.addOption(index);
+
+        Option evaluateIndex = Option.builder("e")
+            .longOpt("evaluate-index")
+            .desc("Measure the recall and the speed of the index")
+            .build();
+        options.addOption(evaluateIndex);
+
+        Option hnswM = Option.builder("hnsw_m")
+            .longOpt("hnsw-m")
+            .argName("M")
+            .hasArg()
+            .desc("Set the number of links per node of the HNSW index")
+            .build();
+        options.addOption(hnswM);
+
+        Option hnswEfConstruction = Option.builder("hnsw_ef_construction")
+            .longOpt("hnsw-ef-construction")
+            .argName("ef")
+            .hasArg()
+            .desc("Set the beam width used when building the HNSW index")
+            .build();
+        options.addOption(hnswEfConstruction);
+
+        Option hnswEfSearch = Option.builder("hnsw_ef_search")
+            .longOpt("hnsw-ef-search")
+            .argName("ef")
+            .hasArg()
+            .desc("Set the beam width used when searching the HNSW index")
+            .build();
+        options.addOption(hnswEfSearch);
+
+        Option precomputeDistances = Option.builder("p")
+            .longOpt("precompute-distances")
+            .desc("Compute all testing to training distances once")
+            .build();
+        options.addOption(precomputeDistances);
+
+        Option saveModel = Option.builder("save_model")
+            .longOpt("save-model")
+            .argName("file")
+            .hasArg()
+            .desc("Save the featurized training set to a file")
+            .build();
+        options.addOption(saveModel);
+
+        Option loadModel = Option.builder("load_model")
+            .longOpt("load-model")
+            .argName("file")
+            .hasArg()
+            .desc("Classify against a training set saved with --save-model")
+            .build();
+        options.addOption(loadModel);
+
+        Option saveStore = Option.builder("save_store")
+            .longOpt("save-store")
+            .argName("file")
+            .hasArg()
+            .desc("Save the featurized training set as a memory-mappable"
+                + " feature store")
+            .build();
+        options.addOption(saveStore);
+
+        Option loadStore = Option.builder("load_store")
+            .longOpt("load-store")
+            .argName("file")
+            .hasArg()
+            .desc("Classify against a feature store saved with --save-store,"
+                + " mapped into memory")
+            .build();
+        options.addOption(loadStore);
+
+        Option classify = Option.builder("classify")
+            .longOpt("classify")
+            .argName("file")
+            .hasArg()
+            .desc("Print the labels of the articles of an SGML file, or of"
+                + " any other file read as one article, instead of testing")
+            .build();
+        options.addOption(classify);
+
+        Option compileDictionary = Option.builder("compile_dictionary")
+            .longOpt("compile-dictionary")
+            .argName("file")
+            .hasArg()
+            .desc("Compile dictionary.json into a file and exit")
+            .build();
+        options.addOption(compileDictionary);
+
+        Option loadDictionary = Option.builder("load_dictionary")
+            .longOpt("load-dictionary")
+            .argName("file")
+            .hasArg()
+            .desc("Map a dictionary compiled with --compile-dictionary"
+                + " instead of parsing dictionary.json")
+            .build();
+        options.addOption(loadDictionary);
+
+        Option offHeap = Option.builder("off_heap")
+            .longOpt("off-heap")
+            .desc("Keep the training set outside the Java heap")
+            .build();
+        options.addOption(offHeap);
+
+        Option fitTrainingOnly = Option.builder("fit_training_only")
+            .longOpt("fit-training-only")
+            .desc("Normalise the features with the training set alone, as"
+                + " when classifying articles one at a time")
+            .build();
+        options.addOption(fitTrainingOnly);
+
         Option disableWestGermanPoliticalCount
             = Option.builder("disable_west_german_political_count")
                 .longOpt("disable-west-german-political-count")
@@ -164,11 +292,31 @@ public class Main
         try {
             cmd = parser.parse(options, args);
 
-            int K = 2;
+            if (cmd.hasOption("compile_dictionary")) {
+                new Dictionary(new File("dictionary.json")).writeCompiled(
+                    new File(cmd.getOptionValue("compile_dictionary"))
+                );
+                System.out.println(
+                    "Compiled dictionary.json to "
+                        + cmd.getOptionValue("compile_dictionary")
+                );
+                return;
+            }
+
+            int[] Ks = { 2 };
             if (cmd.hasOption("k")) {
-                K = Integer.parseInt(cmd.getOptionValue("k"));
+                String[] optVals = cmd.getOptionValue("k").split(",");
+                Ks = new int[optVals.length];
+                for (int i = 0; i < optVals.length; ++i) {
+                    Ks[i] = Integer.parseInt(optVals[i].trim());
+                }
+            }
+            int K = Ks[0];
+            System.out.print("K: " + K);
+            for (int i = 1; i < Ks.length; ++i) {
+                System.out.print("," + Ks[i]);
             }
-            System.out.println("K: " + K);
+            System.out.println();
 
             float ratio = 0.1f;
             if (cmd.hasOption("r")) {
@@ -191,6 +339,57 @@ public class Main
             }
             System.out.println("metric: " + m.toString());
 
+            int threadCount = 1;
+            if (cmd.hasOption("t")) {
+                threadCount = Integer.parseInt(cmd.getOptionValue("t"));
+                if (threadCount < 1) {
+                    System.err.println(
+                        "Invalid -t option argument: " + threadCount
+                    );
+                    threadCount = 1;
+                }
+            }
+            System.out.println("threads: " + threadCount);
+
+            Classifier.INDEX indexType = Classifier.INDEX.LINEAR;
+            if (cmd.hasOption("i")) {
+                String optVal = cmd.getOptionValue("i").toLowerCase();
+                if (optVal.equals("linear")) {
+                    indexType = Classifier.INDEX.LINEAR;
+                } else if (optVal.equals("vp-tree")) {
+                    indexType = Classifier.INDEX.VP_TREE;
+                } else if (optVal.equals("hnsw")) {
+                    indexType = Classifier.INDEX.HNSW;
+                } else {
+                    System.err.println("Invalid -i option argument: " + optVal);
+                }
+            }
+            System.out.println("index: " + indexType.toString());
+
+            int M = 16;
+            int efConstruction = 200;
+            int efSearch = 64;
+            if (cmd.hasOption("hnsw_m")) {
+                M = Integer.parseInt(cmd.getOptionValue("hnsw_m"));
+            }
+            if (cmd.hasOption("hnsw_ef_construction")) {
+                efConstruction = Integer.parseInt(
+                    cmd.getOptionValue("hnsw_ef_construction")
+                );
+            }
+            if (cmd.hasOption("hnsw_ef_search")) {
+                efSearch = Integer.parseInt(
+                    cmd.getOptionValue("hnsw_ef_search")
+                );
+            }
+            if (indexType == Classifier.INDEX.HNSW) {
+                System.out.println(
+                    "HNSW: M=" + M
+                        + " efConstruction=" + efConstruction
+                        + " efSearch=" + efSearch
+                );
+            }
+
             short featureFlag = (short)0b1111111111111111;
             if (cmd.hasOption("disable_west_german_political_count")) {
                 featureFlag ^= FEATURE.WEST_GERMAN_POLITICAL_COUNT.id;
@@ -229,6 +428,28 @@ public class Main
                 featureFlag ^= FEATURE.TITLE.id;
             }
 
+            // A saved model or store was featurized with its own features and
+            // labels, which take the place of the --disable-* and --ignore-*
+            // options. It holds no extractor values, so the extractor
+            // plugins on the class path are only used when featurizing the
+            // training set here.
+            Model model = null;
+            MappedFeatureStore mappedStore = null;
+            FeatureExtractors extractors = FeatureExtractors.NONE;
+            if (cmd.hasOption("load_model")) {
+                model = ModelReader.read(
+                    new File(cmd.getOptionValue("load_model"))
+                );
+                featureFlag = model.getFeatureFlags();
+            } else if (cmd.hasOption("load_store")) {
+                mappedStore = new MappedFeatureStore(
+                    new File(cmd.getOptionValue("load_store"))
+                );
+                featureFlag = mappedStore.getFeatureFlags();
+            } else {
+                extractors = FeatureExtractors.load();
+            }
+
             System.out.println("features:");
             for (var f : FeatureVector.FEATURE.values()) {
                 System.out.print("    ");
@@ -239,6 +460,9 @@ public class Main
                 }
                 System.out.println(f.toString());
             }
+            for (int e = 0; e < extractors.size(); ++e) {
+                System.out.println("    +" + extractors.get(e).getName());
+            }
 
             List<Article.LABEL> ignoredLabels = new ArrayList<>();
             if (cmd.hasOption("ignore_west_germany")) {
@@ -260,6 +484,12 @@ public class Main
                 ignoredLabels.add(Article.LABEL.JAPAN);
             }
 
+            if (model != null) {
+                ignoredLabels = new ArrayList<>(model.getIgnoredLabels());
+            } else if (mappedStore != null) {
+                ignoredLabels = mappedStore.getIgnoredLabels();
+            }
+
             System.out.println("labels:");
             for (var l : Article.LABEL.values()) {
                 System.out.print("    ");
@@ -273,20 +503,52 @@ public class Main
 
             System.out.println();
 
-            Dataset dataset
-                = Dataset.loadFromSGMLFile("dataset.sgm", ignoredLabels);
-            System.out.println("Databset size: " + dataset.getSize());
+            // A saved model or store takes the place of the training split,
+            // the first articles of each label, which are then skipped as
+            // dataset.sgm is parsed, by the number of them the model has.
+            // A shuffled dataset is still split whole, as the shuffle
+            // decided which articles were trained on. The --classify
+            // queries take the place of the testing split, and dataset.sgm
+            // is not read for them at all when a model or store is loaded.
+            boolean loaded = model != null || mappedStore != null;
+            boolean queries = cmd.hasOption("classify");
+            Dataset training = new Dataset();
+            Dataset testing;
+            if (loaded && queries) {
+                testing = loadQueries(cmd.getOptionValue("classify"));
+            } else if (loaded && !cmd.hasOption("s")) {
+                testing = Dataset.loadFromSGMLFile(
+                    "dataset.sgm",
+                    ignoredLabels,
+                    (model != null)
+                        ? model.getLabelCounts()
+                        : mappedStore.getLabelCounts()
+                );
+            } else {
+                Dataset dataset
+                    = Dataset.loadFromSGMLFile("dataset.sgm", ignoredLabels);
+                System.out.println("Databset size: " + dataset.getSize());
 
-            if (cmd.hasOption("s")) {
-                dataset.shuffleArticles();
-            }
+                if (cmd.hasOption("s")) {
+                    dataset.shuffleArticles();
+                }
 
-            Pair<Dataset, Dataset> splitted = dataset.split(ratio);
+                Pair<Dataset, Dataset> splitted = dataset.split(ratio);
 
-            Dataset training = splitted.first;
-            System.out.println("Training set size: " + training.getSize());
-            Dataset testing = splitted.second;
-            System.out.println("Testing set size: " + testing.getSize());
+                if (!loaded) {
+                    training = splitted.first;
+                    System.out.println(
+                        "Training set size: " + training.getSize()
+                    );
+                }
+                testing = queries
+                    ? loadQueries(cmd.getOptionValue("classify"))
+                    : splitted.second;
+            }
+            System.out.println(
+                (queries ? "Query count: " : "Testing set size: ")
+                    + testing.getSize()
+            );
 
             List<FeatureVector> trainingVectors
                 = new ArrayList<>(training.getSize());
@@ -295,39 +557,79 @@ public class Main
 
             Stemmer stemmer = new Stemmer("stoplist.txt");
 
-            Dictionary dict = new Dictionary(new File("dictionary.json"));
-
-            int westGermanPoliticianMaxCount = 0;
-            float canadianCityMaxFreq = 0;
-
-            int trainingSize = training.getSize();
-            System.out.println("\nTraining...");
-            for (int i = 0; i < trainingSize; ++i) {
-                System.out.print("\r" + (i+1) + " of " + trainingSize);
-                Article article = training.getArticle(i);
-                Tokenizer contentTokenizer
-                    = new Tokenizer(article.getContent());
-                Tokenizer titleTokenizer
-                    = new Tokenizer(article.getTitle());
-                FeatureVector vector = new FeatureVector(
-                    stemmer.stemTokens(contentTokenizer.scanTokens()),
-                    stemmer.stemTokens(titleTokenizer.scanTokens()),
-                    dict,
-                    Optional.of(article.getLabel())
+            Dictionary dict;
+            if (cmd.hasOption("load_dictionary")) {
+                dict = Dictionary.loadCompiled(
+                    new File(cmd.getOptionValue("load_dictionary"))
                 );
+            } else {
+                dict = new Dictionary(new File("dictionary.json"));
+            }
 
-                if (vector.getWestGermanPoliticianCount()
-                    > westGermanPoliticianMaxCount) {
+            FeatureSpace space = new FeatureSpace();
+
+            // A mapped store is off the heap already. Otherwise the vectors
+            // are only kept on the heap when they are to be saved.
+            boolean save = cmd.hasOption("save_model")
+                || cmd.hasOption("save_store");
+            OffHeapFeatureStore offHeapStore = null;
+            if (cmd.hasOption("off_heap") && mappedStore == null) {
+                offHeapStore = new OffHeapFeatureStore(
+                    (model != null)
+                        ? model.getVectors().size() : training.getSize()
+                );
+            }
 
-                    westGermanPoliticianMaxCount
-                        = vector.getWestGermanPoliticianCount();
+            if (model != null) {
+                trainingVectors = model.getVectors();
+                if (offHeapStore != null) {
+                    for (FeatureVector vector : trainingVectors) {
+                        offHeapStore.append(vector);
+                    }
                 }
-
-                if (vector.getCanadianCityFreq() > canadianCityMaxFreq) {
-                    canadianCityMaxFreq = vector.getCanadianCityFreq();
+                space = new FeatureSpace(
+                    model.getWestGermanPoliticianMaxCount(),
+                    model.getCanadianCityMaxFreq()
+                );
+                System.out.println(
+                    "\nLoaded " + trainingVectors.size() + " training vectors"
+                );
+            } else if (mappedStore != null) {
+                space = new FeatureSpace(
+                    mappedStore.getWestGermanPoliticianMaxCount(),
+                    mappedStore.getCanadianCityMaxFreq()
+                );
+                System.out.println(
+                    "\nMapped " + mappedStore.getSize() + " training vectors"
+                );
+            } else {
+                int trainingSize = training.getSize();
+                System.out.println("\nTraining...");
+                for (int i = 0; i < trainingSize; ++i) {
+                    System.out.print("\r" + (i+1) + " of " + trainingSize);
+                    Article article = training.getArticle(i);
+                    Tokenizer contentTokenizer
+                        = new Tokenizer(article.getContent());
+                    Tokenizer titleTokenizer
+                        = new Tokenizer(article.getTitle());
+                    FeatureVector vector = new FeatureVector(
+                        stemmer.stemTokens(contentTokenizer.scanTokens()),
+                        stemmer.stemTokens(titleTokenizer.scanTokens()),
+                        dict,
+                        Optional.of(article.getLabel()),
+                        featureFlag,
+                        extractors
+                    );
+
+                    space.accept(vector);
+
+                    if (offHeapStore != null) {
+                        offHeapStore.append(vector);
+                    }
+                    if (offHeapStore == null || save) {
+                        trainingVectors.add(vector);
+                    }
                 }
-
-                trainingVectors.add(vector);
             }
 
             int testingSize = testing.getSize();
@@ -343,78 +645,216 @@ public class Main
                     stemmer.stemTokens(contentTokenizer.scanTokens()),
                     stemmer.stemTokens(titleTokenizer.scanTokens()),
                     dict,
-                    Optional.of(article.getLabel())
+                    Optional.ofNullable(article.getLabel()),
+                    featureFlag,
+                    extractors
                 );
 
-                if (vector.getWestGermanPoliticianCount()
-                    > westGermanPoliticianMaxCount) {
-
-                    westGermanPoliticianMaxCount
-                        = vector.getWestGermanPoliticianCount();
-                }
-
-                if (vector.getCanadianCityFreq() > canadianCityMaxFreq) {
-                    canadianCityMaxFreq = vector.getCanadianCityFreq();
+                // The queries are classified one at a time, with the
+                // normalisers of the training set alone.
+                if (!cmd.hasOption("fit_training_only") && !queries) {
+                    space.accept(vector);
                 }
 
                 testingVectors.add(vector);
             }
 
+            // Unless fitted on the training set alone, the normalisers also
+            // cover the testing set, so they are saved once it has been
+            // featurized.
+            Model trained = new Model(
+                trainingVectors,
+                space.getWestGermanPoliticianMaxCount(),
+                space.getCanadianCityMaxFreq(),
+                featureFlag,
+                ignoredLabels
+            );
+            if (mappedStore != null && save) {
+
+                System.err.println(
+                    "\n\nA mapped feature store cannot be saved again"
+                );
+            } else if (extractors.size() > 0 && save) {
+                System.err.println(
+                    "\n\nFeature extractor values cannot be saved"
+                );
+            } else {
+                if (cmd.hasOption("save_model")) {
+                    ModelWriter.write(
+                        trained, new File(cmd.getOptionValue("save_model"))
+                    );
+                    System.out.println(
+                        "\n\nSaved the model to "
+                            + cmd.getOptionValue("save_model")
+                    );
+                }
+                if (cmd.hasOption("save_store")) {
+                    MappedFeatureStore.write(
+                        trained, new File(cmd.getOptionValue("save_store"))
+                    );
+                    System.out.println(
+                        "\n\nSaved the feature store to "
+                            + cmd.getOptionValue("save_store")
+                    );
+                }
+            }
+
             System.out.println("\n\nClassifying...");
+            FeatureStore trainingStore;
+            if (mappedStore != null) {
+                trainingStore = mappedStore;
+            } else if (offHeapStore != null) {
+                trainingStore = offHeapStore;
+            } else {
+                trainingStore = new FeatureStore(trainingVectors);
+            }
             Classifier classifier = new Classifier(
                 K,
-                trainingVectors,
+                trainingStore,
                 testingVectors,
-                westGermanPoliticianMaxCount,
-                canadianCityMaxFreq,
+                space.getWestGermanPoliticianMaxCount(),
+                space.getCanadianCityMaxFreq(),
                 ignoredLabels,
                 featureFlag,
                 m
             );
-            classifier.clasify();
+            classifier.setHnswParameters(M, efConstruction, efSearch);
+            classifier.setIndex(indexType);
+            if (classifier.getIndex() != indexType) {
+                System.out.println(
+                    "The distance is not a metric, falling back to "
+                        + classifier.getIndex().toString()
+                );
+            }
+            if (queries) {
+                for (int k : Ks) {
+                    classifier.setK(k);
+                    List<Article.LABEL> found
+                        = classifier.classifyBatch(testingVectors).first;
+
+                    System.out.println("\nLabels for K=" + k + ":");
+                    for (int i = 0; i < found.size(); ++i) {
+                        System.out.println(
+                            found.get(i)
+                                + "\t"
+                                + testing.getArticle(i).getTitle()
+                        );
+                    }
+                }
 
-            List<Article.LABEL> labels = new ArrayList<>();
-            for (var l : Article.LABEL.values()) {
-                if (!ignoredLabels.contains(l)) {
-                    labels.add(l);
+                if (offHeapStore != null) {
+                    offHeapStore.close();
                 }
+                return;
             }
-
-            System.out.println("\n\nAccuracy: " + classifier.getAccuracy());
-            System.out.println();
-            for (Article.LABEL label : labels) {
+            if (cmd.hasOption("e")) {
+                classifier.evaluateIndex();
                 System.out.println(
-                    label.name()
-                        + " sensitivity: "
-                        + classifier.getSensitivity(label)
+                    "Recall@" + K + ": " + classifier.getRecall()
                 );
-            }
-            System.out.println("Weighted mean of sensitivity: "
-                + classifier.getWeightedMeanOfSensitivity());
-            System.out.println();
-            for (Article.LABEL label : labels) {
                 System.out.println(
-                    label.name()
-                        + " precision: "
-                        + classifier.getPrecision(label)
+                    "Queries per second: "
+                        + classifier.getIndexQueriesPerSecond()
+                        + " (linear scan: "
+                        + classifier.getLinearQueriesPerSecond()
+                        + ")"
                 );
             }
-            System.out.println("Weighted mean of precision: "
-                + classifier.getWeightedMeanOfPrecision());
-            System.out.println();
-            for (Article.LABEL label : labels) {
+            if (cmd.hasOption("p")) {
+                DistanceMatrix distances
+                    = classifier.precomputeDistances(threadCount);
                 System.out.println(
-                    label.name()
-                        + " F1: "
-                        + classifier.getF1(label)
+                    "Distance matrix: "
+                        + distances.getQueryCount()
+                        + " x "
+                        + distances.getRowCount()
+                        + (distances.isOffHeap() ? " (off-heap)" : "")
                 );
+                // Every distance is evaluated here, once for all the Ks.
+                System.out.println(
+                    "Distance evaluations per query: "
+                        + distances.getRowCount()
+                );
+            }
+
+            List<Article.LABEL> labels = new ArrayList<>();
+            for (var l : Article.LABEL.values()) {
+                if (!ignoredLabels.contains(l)) {
+                    labels.add(l);
+                }
+            }
+
+            for (int k : Ks) {
+                if (Ks.length > 1) {
+                    System.out.println("\nResults for K=" + k + ":");
+                }
+                classifier.setK(k);
+                classifier.clasify(threadCount);
+
+                if (cmd.hasOption("p")) {
+                    System.out.println();
+                } else {
+                    System.out.println(
+                        "\n\nDistance evaluations per query: "
+                            + classifier.getMeanDistanceEvaluations()
+                    );
+                }
+                System.out.println("\nAccuracy: " + classifier.getAccuracy());
+                System.out.println();
+                for (Article.LABEL label : labels) {
+                    System.out.println(
+                        label.name()
+                            + " sensitivity: "
+                            + classifier.getSensitivity(label)
+                    );
+                }
+                System.out.println("Weighted mean of sensitivity: "
+                    + classifier.getWeightedMeanOfSensitivity());
+                System.out.println();
+                for (Article.LABEL label : labels) {
+                    System.out.println(
+                        label.name()
+                            + " precision: "
+                            + classifier.getPrecision(label)
+                    );
+                }
+                System.out.println("Weighted mean of precision: "
+                    + classifier.getWeightedMeanOfPrecision());
+                System.out.println();
+                for (Article.LABEL label : labels) {
+                    System.out.println(
+                        label.name()
+                            + " F1: "
+                            + classifier.getF1(label)
+                    );
+                }
+                System.out.println("Weighted mean of F1: "
+                    + classifier.getWeightedMeanOfF1());
+            }
+
+            if (offHeapStore != null) {
+                offHeapStore.close();
             }
-            System.out.println("Weighted mean of F1: "
-                + classifier.getWeightedMeanOfF1());
         } catch (ParserConfigurationException | SAXException | IOException e) {
             e.printStackTrace();
         } catch (ParseException e) {
             e.printStackTrace();
         }
     }
+
+    // An SGML file in the format of dataset.sgm, or any other file as the
+    // content of a single article with no title.
+    private static Dataset loadQueries(
+        String filename
+    ) throws ParserConfigurationException, SAXException, IOException {
+        if (filename.toLowerCase().endsWith(".sgm")) {
+            return Dataset.loadQueriesFromSGMLFile(filename);
+        }
+
+        List<Article> articles = new ArrayList<>();
+        articles.add(
+            new Article("", null, Files.readString(Path.of(filename)))
+        );
+        return new Dataset(articles);
+    }
 }
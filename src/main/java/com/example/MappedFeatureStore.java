@@ -0,0 +1,385 @@
+package com.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// A training set read straight from a memory-mapped file, so that it is
+// shared through the page cache by every process using it and opening it
+// costs next to nothing. The file is little-endian:
+//
+//   header, HEADER_SIZE bytes, see the *_AT constants
+//   one record per row, see RecordFeatureStore
+//   the pool, the title symbols and then the trigrams of every row as
+//     ints, each row's sorted
+//   the strings the symbols stand for, each an int length and UTF-8 bytes
+//
+// Symbols in the file are indices into its strings rather than global
+// SymbolTable ids, which differ between processes. encode() therefore
+// translates the queries into the symbols of the file.
+public final class MappedFeatureStore extends RecordFeatureStore {
+
+    public static final int MAGIC = 0x4B4A4653;
+    public static final int VERSION = 3;
+
+    static final int HEADER_SIZE = 48;
+    private static final int SIZE_AT = 8;
+    private static final int POOL_SIZE_AT = 12;
+    private static final int MAX_TITLE_SIZE_AT = 16;
+    private static final int MAX_GRAM_COUNT_AT = 20;
+    private static final int FEATURE_FLAGS_AT = 24;
+    private static final int IGNORED_LABELS_AT = 26;
+    private static final int POLITICIAN_MAX_COUNT_AT = 28;
+    private static final int CITY_MAX_FREQ_AT = 32;
+    private static final int STRING_COUNT_AT = 36;
+    private static final int STRINGS_AT = 40;
+    private static final int FILE_SIZE_AT = 44;
+
+    private ByteBuffer buffer;
+
+    private int stringCount;
+    private int stringsAt;
+
+    // Built on first use, together with the symbols given to the strings
+    // of the queries that are not in the file.
+    private Map<String, Integer> symbols;
+
+    public MappedFeatureStore(File file) throws IOException {
+        this(map(file));
+    }
+
+    MappedFeatureStore(ByteBuffer buffer) throws IOException {
+        super(
+            checkHeader(buffer),
+            Math.max(
+                buffer.getInt(MAX_TITLE_SIZE_AT),
+                buffer.getInt(MAX_GRAM_COUNT_AT)
+            )
+        );
+
+        this.buffer = buffer;
+
+        int poolSize = buffer.getInt(POOL_SIZE_AT);
+        int poolAt = HEADER_SIZE + getSize() * RECORD_SIZE;
+        setBuffers(
+            buffer,
+            HEADER_SIZE,
+            buffer.slice(poolAt, poolSize * Integer.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asIntBuffer()
+        );
+
+        this.stringCount = buffer.getInt(STRING_COUNT_AT);
+        this.stringsAt = buffer.getInt(STRINGS_AT);
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        try (
+            FileChannel channel = FileChannel.open(
+                file.toPath(), StandardOpenOption.READ
+            )
+        ) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(
+                    "Feature store too large to be mapped: " + file
+                );
+            }
+
+            return channel
+                .map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                .order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private static int checkHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a feature store file");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException(
+                "Unsupported feature store version: " + version
+            );
+        }
+
+        // The records, the pool and at least the lengths of the strings
+        // must all lie within the file, which must be as long as written.
+        int size = buffer.getInt(SIZE_AT);
+        int poolSize = buffer.getInt(POOL_SIZE_AT);
+        int stringCount = buffer.getInt(STRING_COUNT_AT);
+        int stringsAt = buffer.getInt(STRINGS_AT);
+        long poolEnd = HEADER_SIZE
+            + (long)size * RECORD_SIZE
+            + (long)poolSize * Integer.BYTES;
+        if (size < 0
+            || poolSize < 0
+            || stringCount < 0
+            || buffer.getInt(MAX_TITLE_SIZE_AT) < 0
+            || buffer.getInt(MAX_GRAM_COUNT_AT) < 0
+            || stringsAt < poolEnd
+            || stringsAt + (long)stringCount * Integer.BYTES
+                > buffer.capacity()
+            || buffer.getInt(FILE_SIZE_AT) != buffer.capacity()) {
+
+            throw new IOException("Truncated or corrupt feature store file");
+        }
+
+        return size;
+    }
+
+    // Writes the vectors of the model in the layout described above.
+    public static void write(Model model, File file) throws IOException {
+        Layout layout = new Layout(model.getVectors());
+
+        try (
+            FileChannel channel = FileChannel.open(
+                file.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+            )
+        ) {
+            MappedByteBuffer buffer = channel.map(
+                FileChannel.MapMode.READ_WRITE, 0, layout.fileSize
+            );
+            fill(buffer.order(ByteOrder.LITTLE_ENDIAN), model, layout);
+            buffer.force();
+        }
+    }
+
+    // Lays out the model in `buffer`, which must hold layout.fileSize
+    // bytes.
+    static void fill(ByteBuffer buffer, Model model, Layout layout) {
+        List<FeatureVector> vectors = model.getVectors();
+        SymbolTable global = SymbolTable.getGlobal();
+
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(SIZE_AT, vectors.size());
+        buffer.putInt(POOL_SIZE_AT, layout.poolSize);
+        buffer.putInt(MAX_TITLE_SIZE_AT, layout.maxTitleSize);
+        buffer.putInt(MAX_GRAM_COUNT_AT, layout.maxGramCount);
+        buffer.putShort(FEATURE_FLAGS_AT, model.getFeatureFlags());
+
+        int ignoredLabels = 0;
+        for (Article.LABEL label : model.getIgnoredLabels()) {
+            ignoredLabels |= 1 << label.ordinal();
+        }
+        buffer.put(IGNORED_LABELS_AT, (byte)ignoredLabels);
+
+        buffer.putInt(
+            POLITICIAN_MAX_COUNT_AT, model.getWestGermanPoliticianMaxCount()
+        );
+        buffer.putFloat(CITY_MAX_FREQ_AT, model.getCanadianCityMaxFreq());
+        buffer.putInt(STRING_COUNT_AT, layout.strings.size());
+        buffer.putInt(STRINGS_AT, layout.stringsAt);
+        buffer.putInt(FILE_SIZE_AT, layout.fileSize);
+
+        int poolAt = HEADER_SIZE + vectors.size() * RECORD_SIZE;
+        int poolIndex = 0;
+
+        for (int row = 0; row < vectors.size(); ++row) {
+            FeatureVector vec = vectors.get(row);
+            int at = HEADER_SIZE + row * RECORD_SIZE;
+
+            int[] title = FeatureStore.translateTitle(
+                vec.getTitleSymbols(), layout::getId
+            );
+            int[] grams = FeatureStore.translateGrams(
+                vec.getFirstCapitalizedWordGrams(), layout::getId
+            );
+
+            putRecord(
+                buffer,
+                at,
+                vec,
+                layout.getId(vec.getFirstNumberSymbol()),
+                layout.getId(vec.getMostFrequentAcronymSymbol()),
+                layout.getId(vec.getFirstCapitalizedWordSymbol()),
+                poolIndex,
+                title.length,
+                grams.length
+            );
+
+            for (int symbol : title) {
+                buffer.putInt(poolAt + Integer.BYTES * poolIndex++, symbol);
+            }
+            for (int gram : grams) {
+                buffer.putInt(poolAt + Integer.BYTES * poolIndex++, gram);
+            }
+        }
+
+        int at = layout.stringsAt;
+        for (int id : layout.strings) {
+            byte[] bytes
+                = global.getValue(id).getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(at, bytes.length);
+            buffer.put(at + Integer.BYTES, bytes);
+            at += Integer.BYTES + bytes.length;
+        }
+    }
+
+    public short getFeatureFlags() {
+        return this.buffer.getShort(FEATURE_FLAGS_AT);
+    }
+
+    public List<Article.LABEL> getIgnoredLabels() {
+        int bits = this.buffer.get(IGNORED_LABELS_AT);
+
+        List<Article.LABEL> ignoredLabels = new ArrayList<>();
+        for (Article.LABEL label : Article.LABEL.values()) {
+            if ((bits & (1 << label.ordinal())) != 0) {
+                ignoredLabels.add(label);
+            }
+        }
+
+        return ignoredLabels;
+    }
+
+    public int getWestGermanPoliticianMaxCount() {
+        return this.buffer.getInt(POLITICIAN_MAX_COUNT_AT);
+    }
+
+    public float getCanadianCityMaxFreq() {
+        return this.buffer.getFloat(CITY_MAX_FREQ_AT);
+    }
+
+    // The queries get the symbols of the strings in the file. The strings
+    // that are not there get symbols past the last of them, which never
+    // match any row.
+    @Override
+    public FeatureStore encode(List<FeatureVector> vectors) {
+        Map<String, Integer> symbols = getSymbols();
+        SymbolTable global = SymbolTable.getGlobal();
+
+        synchronized (symbols) {
+            return new FeatureStore(
+                vectors,
+                symbol -> symbols.computeIfAbsent(
+                    global.getValue(symbol), s -> symbols.size()
+                )
+            );
+        }
+    }
+
+    private synchronized Map<String, Integer> getSymbols() {
+        if (this.symbols == null) {
+            Map<String, Integer> symbols = new HashMap<>(2 * stringCount);
+
+            int at = this.stringsAt;
+            for (int id = 0; id < this.stringCount; ++id) {
+                int length = this.buffer.getInt(at);
+                if (length < 0
+                    || at + Integer.BYTES + (long)length
+                        > this.buffer.capacity()) {
+
+                    throw new IllegalStateException(
+                        "Truncated or corrupt feature store file"
+                    );
+                }
+                byte[] bytes = new byte[length];
+                this.buffer.get(at + Integer.BYTES, bytes);
+                symbols.put(new String(bytes, StandardCharsets.UTF_8), id);
+                at += Integer.BYTES + length;
+            }
+
+            this.symbols = symbols;
+        }
+
+        return this.symbols;
+    }
+
+    // The strings of a set of vectors, numbered in order of appearance, and
+    // the size of the file holding them.
+    static class Layout {
+
+        private Map<Integer, Integer> ids = new HashMap<>();
+        private List<Integer> strings = new ArrayList<>();
+
+        private int poolSize;
+        private int maxTitleSize;
+        private int maxGramCount;
+        private int stringsAt;
+        private int fileSize;
+
+        Layout(List<FeatureVector> vectors) throws IOException {
+            SymbolTable global = SymbolTable.getGlobal();
+            long poolSize = 0;
+            long stringsSize = 0;
+
+            for (FeatureVector vec : vectors) {
+                if (vec.getExtractors().size() > 0) {
+                    throw new IOException(
+                        "Feature extractor values cannot be stored"
+                    );
+                }
+
+                int[] title = vec.getTitleSymbols();
+                int[] grams = vec.getFirstCapitalizedWordGrams();
+                if (title.length > Short.MAX_VALUE
+                    || grams.length > Short.MAX_VALUE) {
+
+                    throw new IOException("Title too long to be stored");
+                }
+
+                stringsSize += addString(vec.getFirstNumberSymbol(), global);
+                stringsSize
+                    += addString(vec.getMostFrequentAcronymSymbol(), global);
+                stringsSize
+                    += addString(vec.getFirstCapitalizedWordSymbol(), global);
+                for (int symbol : title) {
+                    stringsSize += addString(symbol, global);
+                }
+                for (int gram : grams) {
+                    if (gram >= SYMBOL_GRAM) {
+                        stringsSize += addString(gram - SYMBOL_GRAM, global);
+                    }
+                }
+
+                poolSize += title.length + grams.length;
+                this.maxTitleSize = Math.max(this.maxTitleSize, title.length);
+                this.maxGramCount = Math.max(this.maxGramCount, grams.length);
+            }
+
+            long stringsAt = HEADER_SIZE
+                + (long)vectors.size() * RECORD_SIZE
+                + poolSize * Integer.BYTES;
+            if (stringsAt + stringsSize > Integer.MAX_VALUE) {
+                throw new IOException("Feature store too large to be mapped");
+            }
+
+            this.poolSize = (int)poolSize;
+            this.stringsAt = (int)stringsAt;
+            this.fileSize = (int)(stringsAt + stringsSize);
+        }
+
+
+        // Returns the number of bytes the string takes up if it is new.
+        private int addString(int symbol, SymbolTable global) {
+            if (this.ids.containsKey(symbol)) {
+                return 0;
+            }
+
+            this.ids.put(symbol, this.strings.size());
+            this.strings.add(symbol);
+            return Integer.BYTES
+                + global.getValue(symbol).getBytes(StandardCharsets.UTF_8)
+                    .length;
+        }
+
+        private int getId(int symbol) {
+            return this.ids.get(symbol);
+        }
+    }
+}
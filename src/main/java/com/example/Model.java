@@ -0,0 +1,60 @@
+package com.example;
+
+import java.util.List;
+
+// Everything the classifier needs from a training run: the training
+// vectors, the normalisers of the count and frequency features, and the
+// features and labels they were extracted with. See ModelWriter for the
+// file format.
+public class Model {
+
+    private List<FeatureVector> vectors;
+    private int westGermanPoliticianMaxCount;
+    private float canadianCityMaxFreq;
+    private short featureFlags;
+    private List<Article.LABEL> ignoredLabels;
+
+    public Model(
+        List<FeatureVector> vectors,
+        int westGermanPoliticianMaxCount,
+        float canadianCityMaxFreq,
+        short featureFlags,
+        List<Article.LABEL> ignoredLabels
+    ) {
+        this.vectors = vectors;
+        this.westGermanPoliticianMaxCount = westGermanPoliticianMaxCount;
+        this.canadianCityMaxFreq = canadianCityMaxFreq;
+        this.featureFlags = featureFlags;
+        this.ignoredLabels = ignoredLabels;
+    }
+
+    public List<FeatureVector> getVectors() {
+        return this.vectors;
+    }
+
+    public int getWestGermanPoliticianMaxCount() {
+        return this.westGermanPoliticianMaxCount;
+    }
+
+    public float getCanadianCityMaxFreq() {
+        return this.canadianCityMaxFreq;
+    }
+
+    public short getFeatureFlags() {
+        return this.featureFlags;
+    }
+
+    public List<Article.LABEL> getIgnoredLabels() {
+        return this.ignoredLabels;
+    }
+
+    // The number of vectors of each label, by its ordinal.
+    public int[] getLabelCounts() {
+        int[] counts = new int[Article.LABEL.values().length];
+        for (FeatureVector vector : this.vectors) {
+            vector.getLabel().ifPresent(label -> ++counts[label.ordinal()]);
+        }
+
+        return counts;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+// Reads the files written by ModelWriter. The checksum is verified before
+// anything is parsed, so a damaged file never yields a partial model.
+public class ModelReader {
+
+    public static Model read(File file) throws IOException {
+        return fromBytes(Files.readAllBytes(file.toPath()));
+    }
+
+    public static Model fromBytes(byte[] bytes) throws IOException {
+        if (bytes.length < Integer.BYTES) {
+            throw new IOException("Not a model file");
+        }
+
+        int end = bytes.length - Integer.BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, end);
+
+        DataInputStream in = new DataInputStream(
+            new ByteArrayInputStream(bytes, end, Integer.BYTES)
+        );
+        if (in.readInt() != (int)crc.getValue()) {
+            throw new IOException("Model checksum mismatch");
+        }
+
+        in = new DataInputStream(new ByteArrayInputStream(bytes, 0, end));
+
+        if (in.readInt() != ModelWriter.MAGIC) {
+            throw new IOException("Not a model file");
+        }
+        short version = in.readShort();
+        if (version != ModelWriter.VERSION) {
+            throw new IOException("Unsupported model version: " + version);
+        }
+
+        short featureFlags = in.readShort();
+
+        byte ignoredLabelBits = in.readByte();
+        List<Article.LABEL> ignoredLabels = new ArrayList<>();
+        for (Article.LABEL label : Article.LABEL.values()) {
+            if ((ignoredLabelBits & (1 << label.ordinal())) != 0) {
+                ignoredLabels.add(label);
+            }
+        }
+
+        int westGermanPoliticianMaxCount = in.readInt();
+        float canadianCityMaxFreq = in.readFloat();
+
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; ++i) {
+            strings[i] = in.readUTF();
+        }
+
+        Article.LABEL[] labels = Article.LABEL.values();
+        Token.Type[] types = Token.Type.values();
+
+        int vectorCount = in.readInt();
+        List<FeatureVector> vectors = new ArrayList<>(vectorCount);
+        for (int i = 0; i < vectorCount; ++i) {
+            byte label = in.readByte();
+            int westGermanPoliticianCount = in.readInt();
+            float canadianCityFreq = in.readFloat();
+            long flags = in.readLong();
+            String firstCapitalizedWord = strings[in.readInt()];
+            String firstNumber = strings[in.readInt()];
+            String mostFrequentAcronym = strings[in.readInt()];
+
+            int titleLength = in.readShort();
+            List<Token> title = new ArrayList<>(titleLength);
+            for (int j = 0; j < titleLength; ++j) {
+                Token.Type type = types[in.readByte()];
+                title.add(new Token(type, strings[in.readInt()]));
+            }
+
+            vectors.add(new FeatureVector(
+                westGermanPoliticianCount,
+                canadianCityFreq,
+                flags,
+                firstCapitalizedWord,
+                firstNumber,
+                mostFrequentAcronym,
+                title,
+                (label < 0) ? Optional.empty() : Optional.of(labels[label]),
+                featureFlags
+            ));
+        }
+
+        return new Model(
+            vectors,
+            westGermanPoliticianMaxCount,
+            canadianCityMaxFreq,
+            featureFlags,
+            ignoredLabels
+        );
+    }
+}
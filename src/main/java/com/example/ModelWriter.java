@@ -0,0 +1,129 @@
+package com.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Writes a Model as a single binary file, big-endian:
+//
+//   int    MAGIC
+//   short  VERSION
+//   short  feature flags
+//   byte   ignored labels, bit i set for Article.LABEL ordinal i
+//   int    westGermanPoliticianMaxCount
+//   float  canadianCityMaxFreq
+//   int    string count, then every string in modified UTF-8
+//   int    vector count, then for every vector:
+//            byte   label ordinal, or -1 when it has none
+//            int    west German politician count
+//            float  Canadian city frequency
+//            long   presence flags, see FeatureVector.getFlags()
+//            int    first capitalized word, first number and most
+//                   frequent acronym, as indices into the strings
+//            short  title length, then for every title token a byte with
+//                   its type ordinal and an int with its string index
+//   int    CRC32 of everything above
+//
+// Every distinct string is written only once. The values of FeatureExtractor
+// plugins are not written, so vectors with any are rejected.
+public class ModelWriter {
+
+    public static final int MAGIC = 0x4B494A49;
+    public static final short VERSION = 1;
+
+    public static void write(Model model, File file) throws IOException {
+        Files.write(file.toPath(), toBytes(model));
+    }
+
+    public static byte[] toBytes(Model model) throws IOException {
+        List<FeatureVector> vectors = model.getVectors();
+
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (FeatureVector vector : vectors) {
+            if (vector.getExtractors().size() > 0) {
+                throw new IOException(
+                    "Feature extractor values cannot be saved"
+                );
+            }
+
+            addString(vector.getFirstCapitalizedWord(), ids, strings);
+            addString(vector.getFirstNumber(), ids, strings);
+            addString(vector.getMostFrequentAcronym(), ids, strings);
+            for (Token token : vector.getTitle()) {
+                addString(token.getValue(), ids, strings);
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(model.getFeatureFlags());
+
+        int ignoredLabels = 0;
+        for (Article.LABEL label : model.getIgnoredLabels()) {
+            ignoredLabels |= 1 << label.ordinal();
+        }
+        out.writeByte(ignoredLabels);
+
+        out.writeInt(model.getWestGermanPoliticianMaxCount());
+        out.writeFloat(model.getCanadianCityMaxFreq());
+
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+
+        out.writeInt(vectors.size());
+        for (FeatureVector vector : vectors) {
+            out.writeByte(
+                vector.getLabel().map(label -> label.ordinal()).orElse(-1)
+            );
+            out.writeInt(vector.getWestGermanPoliticianCount());
+            out.writeFloat(vector.getCanadianCityFreq());
+            out.writeLong(vector.getFlags());
+            out.writeInt(ids.get(vector.getFirstCapitalizedWord()));
+            out.writeInt(ids.get(vector.getFirstNumber()));
+            out.writeInt(ids.get(vector.getMostFrequentAcronym()));
+
+            List<Token> title = vector.getTitle();
+            if (title.size() > Short.MAX_VALUE) {
+                throw new IOException(
+                    "Title too long to be written: " + title.size()
+                );
+            }
+            out.writeShort(title.size());
+            for (Token token : title) {
+                out.writeByte(token.getType().ordinal());
+                out.writeInt(ids.get(token.getValue()));
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int)crc.getValue());
+        out.flush();
+
+        return bytes.toByteArray();
+    }
+
+    private static void addString(
+        String string,
+        Map<String, Integer> ids,
+        List<String> strings
+    ) {
+        if (!ids.containsKey(string)) {
+            ids.put(string, strings.size());
+            strings.add(string);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.example;
+
+public class NeighbourHeap {
+
+    private int capacity;
+    private int size;
+
+    private int[] indices;
+    private float[] distances;
+
+    public NeighbourHeap(int capacity) {
+        assert(capacity > 0);
+
+        this.capacity = capacity;
+        this.size = 0;
+        this.indices = new int[capacity];
+        this.distances = new float[capacity];
+    }
+
+    public void clear() {
+        this.size = 0;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public boolean isFull() {
+        return this.size == this.capacity;
+    }
+
+    // Distance a candidate has to beat to get into the heap. Stays infinite
+    // until the heap is full, so it can be used directly as a search cutoff.
+    public float getWorstDistance() {
+        return (isFull()) ? this.distances[0] : Float.POSITIVE_INFINITY;
+    }
+
+    public boolean offer(int index, float distance) {
+        if (this.size < this.capacity) {
+            int i = this.size++;
+            this.indices[i] = index;
+            this.distances[i] = distance;
+            siftUp(i);
+            return true;
+        }
+
+        if (!isCloser(index, distance, this.indices[0], this.distances[0])) {
+            return false;
+        }
+
+        this.indices[0] = index;
+        this.distances[0] = distance;
+        siftDown(0, this.size);
+        return true;
+    }
+
+    // Empties the heap into the given arrays ordered from the nearest to the
+    // farthest neighbour and returns the number of neighbours written.
+    public int drainSorted(int[] outIndices, float[] outDistances) {
+        int count = this.size;
+
+        for (int n = count - 1; n >= 0; --n) {
+            outIndices[n] = this.indices[0];
+            if (outDistances != null) {
+                outDistances[n] = this.distances[0];
+            }
+
+            --this.size;
+            this.indices[0] = this.indices[this.size];
+            this.distances[0] = this.distances[this.size];
+            siftDown(0, this.size);
+        }
+
+        return count;
+    }
+
+    // Ties are broken by the index, so the selected neighbours do not depend
+    // on the order in which the candidates were offered.
+    private static boolean isCloser(
+        int i1,
+        float d1,
+        int i2,
+        float d2
+    ) {
+        return d1 < d2 || (d1 == d2 && i1 < i2);
+    }
+
+    private void siftUp(int i) {
+        int index = this.indices[i];
+        float distance = this.distances[i];
+
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!isCloser(
+                    this.indices[parent], this.distances[parent],
+                    index, distance)) {
+                break;
+            }
+
+            this.indices[i] = this.indices[parent];
+            this.distances[i] = this.distances[parent];
+            i = parent;
+        }
+
+        this.indices[i] = index;
+        this.distances[i] = distance;
+    }
+
+    private void siftDown(int i, int end) {
+        if (end == 0) return;
+
+        int index = this.indices[i];
+        float distance = this.distances[i];
+
+        while (true) {
+            int child = 2*i + 1;
+            if (child >= end) break;
+
+            if (child + 1 < end
+                && isCloser(
+                    this.indices[child], this.distances[child],
+                    this.indices[child + 1], this.distances[child + 1])) {
+                ++child;
+            }
+
+            if (!isCloser(index, distance,
+                    this.indices[child], this.distances[child])) {
+                break;
+            }
+
+            this.indices[i] = this.indices[child];
+            this.distances[i] = this.distances[child];
+            i = child;
+        }
+
+        this.indices[i] = index;
+        this.distances[i] = distance;
+    }
+}
@@ -0,0 +1,298 @@
+package com.example;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+// A training set kept in direct buffers outside the Java heap, so that
+// very large ones neither need a FeatureVector per row nor make the
+// garbage collector scan them. Vectors are appended one at a time and may
+// be dropped right after. The records and the pool are split into chunks
+// of fixed size, see RecordFeatureStore, which are added as the store
+// grows without copying the earlier ones, so the store is not limited to
+// what a single buffer can address.
+//
+// close() frees the chunks at once through the JDK's cleaner for direct
+// buffers, sun.misc.Unsafe.invokeCleaner(). Where that is not available
+// the memory is only returned once the garbage collector collects the
+// buffers. Either way, the store throws IllegalStateException once closed,
+// and it must not be closed while another thread is still reading it.
+public final class OffHeapFeatureStore extends RecordFeatureStore
+    implements AutoCloseable {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    // Pool ints per row to expect, enough for most titles and words.
+    private static final int POOL_INTS_PER_ROW = 32;
+
+    // The chunks hold 2^shift records or ints, as fits the capacity. A
+    // pool chunk always has room for the largest title and trigrams.
+    private static final int MIN_ROW_SHIFT = 10;
+    private static final int MAX_ROW_SHIFT = 16;
+    private static final int MIN_POOL_SHIFT = 17;
+    private static final int MAX_POOL_SHIFT = 22;
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner
+                = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private int rowShift;
+    private int poolShift;
+
+    private ByteBuffer[] records = new ByteBuffer[0];
+    private ByteBuffer[] poolBytes = new ByteBuffer[0];
+    private IntBuffer[] pool = new IntBuffer[0];
+
+    private int size;
+    private long poolSize;
+    private boolean closed;
+
+    public OffHeapFeatureStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    // `capacity` is the number of rows expected. The store fails at once
+    // if they would not fit in the direct memory left to the JVM, rather
+    // than partway through being filled.
+    public OffHeapFeatureStore(int capacity) {
+        this(
+            capacity,
+            getShift(capacity, MIN_ROW_SHIFT, MAX_ROW_SHIFT),
+            getShift(
+                (long)capacity * POOL_INTS_PER_ROW,
+                MIN_POOL_SHIFT,
+                MAX_POOL_SHIFT
+            )
+        );
+    }
+
+    OffHeapFeatureStore(int capacity, int rowShift, int poolShift) {
+        super(0, 0);
+
+        long required = (long)Math.max(capacity, 0)
+            * (RECORD_SIZE + POOL_INTS_PER_ROW * Integer.BYTES);
+        long available = getAvailableDirectMemory();
+        if (required > available) {
+            throw new IllegalArgumentException(
+                "Feature store of " + capacity + " rows needs about "
+                    + required + " bytes of direct memory, but only "
+                    + available + " are available,"
+                    + " see -XX:MaxDirectMemorySize"
+            );
+        }
+
+        this.rowShift = rowShift;
+        this.poolShift = poolShift;
+        updateBuffers();
+    }
+
+    public OffHeapFeatureStore(List<FeatureVector> vectors) {
+        this(vectors.size());
+
+        for (FeatureVector vec : vectors) {
+            append(vec);
+        }
+    }
+
+    private static int getShift(long count, int min, int max) {
+        int shift = 64 - Long.numberOfLeadingZeros(Math.max(count - 1, 0));
+        return Math.min(Math.max(shift, min), max);
+    }
+
+    // Copies `vec` into the store as its last row.
+    public void append(FeatureVector vec) {
+        if (this.closed) {
+            throw new IllegalStateException("Feature store is closed");
+        }
+        if (this.size == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Feature store is full");
+        }
+
+        if (this.size == 0) {
+            setExtractors(vec.getExtractors());
+        } else if (vec.getExtractors() != getExtractors()) {
+            throw new IllegalArgumentException(
+                "Vectors built with different feature extractors"
+            );
+        }
+
+        int[] title = vec.getTitleSymbols();
+        int[] grams = vec.getFirstCapitalizedWordGrams();
+        float[] extracted = vec.getExtractedValues();
+        int poolInts = title.length + grams.length + extracted.length;
+        if (title.length > Short.MAX_VALUE
+            || grams.length > Short.MAX_VALUE
+            || poolInts > 1 << this.poolShift) {
+
+            throw new IllegalArgumentException(
+                "Vector too large to be stored: " + vec.getTitle().size()
+            );
+        }
+
+        if ((this.size >>> this.rowShift) == this.records.length) {
+            addRecordChunk();
+        }
+        long chunkInts = 1L << this.poolShift;
+        if ((this.poolSize & (chunkInts - 1)) + poolInts > chunkInts) {
+            this.poolSize = (long)this.pool.length << this.poolShift;
+        }
+        if ((this.poolSize >>> this.poolShift) == this.pool.length) {
+            addPoolChunk();
+        }
+
+        putRecord(
+            this.records[this.size >>> this.rowShift],
+            (this.size & ((1 << this.rowShift) - 1)) * RECORD_SIZE,
+            vec,
+            vec.getFirstNumberSymbol(),
+            vec.getMostFrequentAcronymSymbol(),
+            vec.getFirstCapitalizedWordSymbol(),
+            this.poolSize,
+            title.length,
+            grams.length
+        );
+
+        IntBuffer chunk = this.pool[(int)(this.poolSize >>> this.poolShift)];
+        int at = (int)(this.poolSize & (chunkInts - 1));
+        chunk.put(at, title);
+        chunk.put(at + title.length, grams);
+        for (int e = 0; e < extracted.length; ++e) {
+            chunk.put(
+                at + title.length + grams.length + e,
+                Float.floatToRawIntBits(extracted[e])
+            );
+        }
+
+        this.poolSize += poolInts;
+        ++this.size;
+    }
+
+    @Override
+    public int getSize() {
+        return this.size;
+    }
+
+    // Frees the chunks. Closing again does nothing.
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+
+        ByteBuffer[] records = this.records;
+        ByteBuffer[] poolBytes = this.poolBytes;
+        this.records = null;
+        this.poolBytes = null;
+        this.pool = null;
+        this.size = 0;
+        this.poolSize = 0;
+        setBuffers(null, 0, this.rowShift, null, this.poolShift);
+
+        for (ByteBuffer buffer : records) {
+            free(buffer);
+        }
+        for (ByteBuffer buffer : poolBytes) {
+            free(buffer);
+        }
+    }
+
+    private void addRecordChunk() {
+        int count = this.records.length;
+        this.records = Arrays.copyOf(this.records, count + 1);
+        this.records[count] = allocate((long)RECORD_SIZE << this.rowShift);
+        updateBuffers();
+    }
+
+    private void addPoolChunk() {
+        int count = this.pool.length;
+        this.poolBytes = Arrays.copyOf(this.poolBytes, count + 1);
+        this.pool = Arrays.copyOf(this.pool, count + 1);
+        this.poolBytes[count]
+            = allocate((long)Integer.BYTES << this.poolShift);
+        this.pool[count] = this.poolBytes[count].asIntBuffer();
+        updateBuffers();
+    }
+
+    private void updateBuffers() {
+        setBuffers(this.records, 0, this.rowShift, this.pool, this.poolShift);
+    }
+
+    private static ByteBuffer allocate(long bytes) {
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                "Feature store chunk too large: " + bytes + " bytes"
+            );
+        }
+
+        return ByteBuffer.allocateDirect((int)bytes)
+            .order(ByteOrder.nativeOrder());
+    }
+
+    private static void free(ByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException e) {
+            // Left to the garbage collector.
+        }
+    }
+
+    // The direct memory the JVM may still allocate, -XX:MaxDirectMemorySize
+    // or by default the maximum heap size, less what is in use.
+    private static long getAvailableDirectMemory() {
+        long max = 0;
+        try {
+            HotSpotDiagnosticMXBean diagnostics = ManagementFactory
+                .getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            max = Long.parseLong(
+                diagnostics.getVMOption("MaxDirectMemorySize").getValue()
+            );
+        } catch (RuntimeException e) {
+            max = 0;
+        }
+        if (max <= 0) {
+            max = Runtime.getRuntime().maxMemory();
+        }
+
+        long used = 0;
+        for (BufferPoolMXBean bufferPool : ManagementFactory
+            .getPlatformMXBeans(BufferPoolMXBean.class)) {
+
+            if (bufferPool.getName().equals("direct")) {
+                used = bufferPool.getMemoryUsed();
+            }
+        }
+
+        return max - used;
+    }
+}
@@ -0,0 +1,268 @@
+package com.example;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+// A FeatureStore keeping each row in a fixed-width record of a ByteBuffer,
+// see the RECORD_* constants, and the titles and trigrams of the rows in an
+// IntBuffer pool. A row's title, its trigrams and the bits of its extracted
+// values, if any, follow each other from the pool offset in its record,
+// the title and trigrams sorted. The buffers may live anywhere, in a mapped
+// file or off the Java heap.
+//
+// Both may be split into chunks of a power of 2 of records and of ints, so
+// that a store can outgrow a single buffer. Row i is then record i & mask
+// of chunk i >>> shift, and likewise for the pool offsets, which are longs.
+// A row's ints never straddle two pool chunks.
+public abstract class RecordFeatureStore extends FeatureStore {
+
+    static final int RECORD_SIZE = 48;
+    static final int RECORD_FLAGS = 0;
+    static final int RECORD_POLITICIAN_COUNT = 8;
+    static final int RECORD_CITY_FREQ = 12;
+    static final int RECORD_FIRST_NUMBER = 16;
+    static final int RECORD_ACRONYM = 20;
+    static final int RECORD_CAPITALIZED_WORD = 24;
+    static final int RECORD_CAPITALIZED_WORD_LENGTH = 28;
+    static final int RECORD_POOL_OFFSET = 32;
+    static final int RECORD_TITLE_SIZE = 40;
+    static final int RECORD_GRAM_COUNT = 42;
+    static final int RECORD_LABEL = 44;
+
+    private static final Article.LABEL[] LABELS = Article.LABEL.values();
+
+    // A single chunk covers every int index.
+    private static final int SINGLE_CHUNK_SHIFT = 31;
+
+    private ByteBuffer[] records;
+    private int recordsAt;
+    private int rowShift;
+    private int rowMask;
+    private IntBuffer[] pool;
+    private int poolShift;
+    private long poolMask;
+    private FeatureExtractors extractors = FeatureExtractors.NONE;
+
+    // Two rows per thread, the own one and the other one of a comparison.
+    private ThreadLocal<int[][]> scratch;
+
+    RecordFeatureStore(int size, int maxSliceLength) {
+        super(size);
+
+        int length = Math.max(maxSliceLength, 1);
+        this.scratch = ThreadLocal.withInitial(() -> new int[][] {
+            new int[length], new int[length]
+        });
+    }
+
+    // Row i is read from records[recordsAt + i * RECORD_SIZE].
+    void setBuffers(ByteBuffer records, int recordsAt, IntBuffer pool) {
+        setBuffers(
+            new ByteBuffer[] { records },
+            recordsAt,
+            SINGLE_CHUNK_SHIFT,
+            new IntBuffer[] { pool },
+            SINGLE_CHUNK_SHIFT
+        );
+    }
+
+    // Chunk i of `records` holds 2^rowShift records from recordsAt, and
+    // chunk i of `pool` 2^poolShift ints. Null buffers close the store.
+    void setBuffers(
+        ByteBuffer[] records,
+        int recordsAt,
+        int rowShift,
+        IntBuffer[] pool,
+        int poolShift
+    ) {
+        this.records = records;
+        this.recordsAt = recordsAt;
+        this.rowShift = rowShift;
+        this.rowMask = (int)((1L << rowShift) - 1);
+        this.pool = pool;
+        this.poolShift = poolShift;
+        this.poolMask = (1L << poolShift) - 1;
+    }
+
+    void setExtractors(FeatureExtractors extractors) {
+        this.extractors = extractors;
+    }
+
+    static void putRecord(
+        ByteBuffer records,
+        int at,
+        FeatureVector vec,
+        int firstNumber,
+        int mostFrequentAcronym,
+        int firstCapitalizedWord,
+        long poolOffset,
+        int titleSize,
+        int gramCount
+    ) {
+        records.putLong(at + RECORD_FLAGS, vec.getFlags());
+        records.putInt(
+            at + RECORD_POLITICIAN_COUNT, vec.getWestGermanPoliticianCount()
+        );
+        records.putFloat(at + RECORD_CITY_FREQ, vec.getCanadianCityFreq());
+        records.putInt(at + RECORD_FIRST_NUMBER, firstNumber);
+        records.putInt(at + RECORD_ACRONYM, mostFrequentAcronym);
+        records.putInt(at + RECORD_CAPITALIZED_WORD, firstCapitalizedWord);
+        records.putInt(
+            at + RECORD_CAPITALIZED_WORD_LENGTH,
+            vec.getFirstCapitalizedWordLength()
+        );
+        records.putLong(at + RECORD_POOL_OFFSET, poolOffset);
+        records.putShort(at + RECORD_TITLE_SIZE, (short)titleSize);
+        records.putShort(at + RECORD_GRAM_COUNT, (short)gramCount);
+        records.put(at + RECORD_LABEL, encodeLabel(vec));
+    }
+
+    @Override
+    public Article.LABEL getLabel(int row) {
+        int label = getRecords(row).get(recordAt(row) + RECORD_LABEL);
+        return (label < 0) ? null : LABELS[label];
+    }
+
+    @Override
+    public int getWestGermanPoliticianCount(int row) {
+        return getRecords(row).getInt(recordAt(row) + RECORD_POLITICIAN_COUNT);
+    }
+
+    @Override
+    public float getCanadianCityFreq(int row) {
+        return getRecords(row).getFloat(recordAt(row) + RECORD_CITY_FREQ);
+    }
+
+    @Override
+    public long getFlags(int row) {
+        return getRecords(row).getLong(recordAt(row) + RECORD_FLAGS);
+    }
+
+    @Override
+    public int getFirstNumber(int row) {
+        return getRecords(row).getInt(recordAt(row) + RECORD_FIRST_NUMBER);
+    }
+
+    @Override
+    public int getMostFrequentAcronym(int row) {
+        return getRecords(row).getInt(recordAt(row) + RECORD_ACRONYM);
+    }
+
+    @Override
+    public int getFirstCapitalizedWord(int row) {
+        return getRecords(row).getInt(recordAt(row) + RECORD_CAPITALIZED_WORD);
+    }
+
+    @Override
+    public int getFirstCapitalizedWordLength(int row) {
+        return getRecords(row).getInt(
+            recordAt(row) + RECORD_CAPITALIZED_WORD_LENGTH
+        );
+    }
+
+    @Override
+    public int getTitleSize(int row) {
+        return getRecords(row).getShort(recordAt(row) + RECORD_TITLE_SIZE);
+    }
+
+    @Override
+    public int getGramCount(int row) {
+        return getRecords(row).getShort(recordAt(row) + RECORD_GRAM_COUNT);
+    }
+
+    @Override
+    public FeatureExtractors getExtractors() {
+        return this.extractors;
+    }
+
+    @Override
+    public float getExtractedValue(int row, int index) {
+        ByteBuffer records = getRecords(row);
+        int at = recordAt(row);
+        long offset = records.getLong(at + RECORD_POOL_OFFSET)
+            + records.getShort(at + RECORD_TITLE_SIZE)
+            + records.getShort(at + RECORD_GRAM_COUNT)
+            + index;
+
+        return Float.intBitsToFloat(
+            this.pool[(int)(offset >>> this.poolShift)]
+                .get((int)(offset & this.poolMask))
+        );
+    }
+
+    @Override
+    public int countCommonGrams(int row, FeatureStore queries, int query) {
+        int[] grams = getScratch(0, getGramCount(row));
+        int count = copy(row, true, grams);
+
+        return queries.countCommonGrams(query, grams, 0, count);
+    }
+
+    @Override
+    public int countCommonTitleTokens(
+        int row,
+        FeatureStore queries,
+        int query
+    ) {
+        int[] symbols = getScratch(0, getTitleSize(row));
+        int count = copy(row, false, symbols);
+
+        return queries.countCommonTitleTokens(query, symbols, 0, count);
+    }
+
+    @Override
+    int countCommonGrams(int row, int[] grams, int from, int to) {
+        int[] own = getScratch(1, getGramCount(row));
+        int count = copy(row, true, own);
+
+        return SortedInts.countCommon(own, 0, count, grams, from, to);
+    }
+
+    @Override
+    int countCommonTitleTokens(int row, int[] symbols, int from, int to) {
+        int[] own = getScratch(1, getTitleSize(row));
+        int count = copy(row, false, own);
+
+        return SortedInts.countCommon(own, 0, count, symbols, from, to);
+    }
+
+    private ByteBuffer getRecords(int row) {
+        ByteBuffer[] records = this.records;
+        if (records == null) {
+            throw new IllegalStateException("Feature store is closed");
+        }
+
+        return records[row >>> this.rowShift];
+    }
+
+    private int recordAt(int row) {
+        return this.recordsAt + (row & this.rowMask) * RECORD_SIZE;
+    }
+
+    private int[] getScratch(int index, int length) {
+        int[][] scratch = this.scratch.get();
+        if (scratch[index].length < length) {
+            scratch[index]
+                = new int[Math.max(length, 2 * scratch[index].length)];
+        }
+
+        return scratch[index];
+    }
+
+    // Copies the trigrams of the row if `grams` is set, its title otherwise.
+    private int copy(int row, boolean grams, int[] out) {
+        ByteBuffer records = getRecords(row);
+        int at = recordAt(row);
+        long offset = records.getLong(at + RECORD_POOL_OFFSET);
+        int count = records.getShort(at + RECORD_TITLE_SIZE);
+        if (grams) {
+            offset += count;
+            count = records.getShort(at + RECORD_GRAM_COUNT);
+        }
+
+        this.pool[(int)(offset >>> this.poolShift)]
+            .get((int)(offset & this.poolMask), out, 0, count);
+
+        return count;
+    }
+}
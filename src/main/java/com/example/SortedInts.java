@@ -0,0 +1,104 @@
+package com.example;
+
+import java.util.Arrays;
+
+// Sets of ints kept as sorted arrays without duplicates, e.g. the title
+// symbols of a FeatureVector, and their intersection.
+public class SortedInts {
+
+    // Above this ratio of lengths every element of the shorter array is
+    // looked up in the longer one instead of walking both.
+    private static final int GALLOP_RATIO = 16;
+
+    public static int[] of(int[] values) {
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        int length = 0;
+        for (int i = 0; i < sorted.length; ++i) {
+            if (length == 0 || sorted[length - 1] != sorted[i]) {
+                sorted[length++] = sorted[i];
+            }
+        }
+
+        return (length == sorted.length)
+            ? sorted : Arrays.copyOf(sorted, length);
+    }
+
+    public static int countCommon(int[] a, int[] b) {
+        return countCommon(a, 0, a.length, b, 0, b.length);
+    }
+
+    public static int countCommon(
+        int[] a,
+        int aFrom,
+        int aTo,
+        int[] b,
+        int bFrom,
+        int bTo
+    ) {
+        int aLength = aTo - aFrom;
+        int bLength = bTo - bFrom;
+
+        if (aLength == 0 || bLength == 0) {
+            return 0;
+        }
+        if (aLength * GALLOP_RATIO < bLength) {
+            return countCommonGalloping(a, aFrom, aTo, b, bFrom, bTo);
+        }
+        if (bLength * GALLOP_RATIO < aLength) {
+            return countCommonGalloping(b, bFrom, bTo, a, aFrom, aTo);
+        }
+
+        // Both indices advance on a match and only the smaller one
+        // otherwise, which the JIT can do without unpredictable branches.
+        int count = 0;
+        while (aFrom < aTo && bFrom < bTo) {
+            int x = a[aFrom];
+            int y = b[bFrom];
+
+            count += (x == y) ? 1 : 0;
+            aFrom += (x <= y) ? 1 : 0;
+            bFrom += (y <= x) ? 1 : 0;
+        }
+
+        return count;
+    }
+
+    // Looks every element of the short array up in the long one, doubling
+    // the step from the last position before a binary search.
+    private static int countCommonGalloping(
+        int[] small,
+        int smallFrom,
+        int smallTo,
+        int[] large,
+        int largeFrom,
+        int largeTo
+    ) {
+        int count = 0;
+
+        for (int i = smallFrom; i < smallTo && largeFrom < largeTo; ++i) {
+            int x = small[i];
+
+            int step = 1;
+            int hi = largeFrom;
+            while (hi < largeTo && large[hi] < x) {
+                largeFrom = hi + 1;
+                hi += step;
+                step <<= 1;
+            }
+
+            int found = Arrays.binarySearch(
+                large, largeFrom, Math.min(hi + 1, largeTo), x
+            );
+            if (found >= 0) {
+                ++count;
+                largeFrom = found + 1;
+            } else {
+                largeFrom = -found - 1;
+            }
+        }
+
+        return count;
+    }
+}
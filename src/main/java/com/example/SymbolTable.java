@@ -0,0 +1,71 @@
+package com.example;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Interns token values as dense int ids, so that features can be compared
+// with == instead of String.equals() and every distinct value is kept only
+// once. A single table is shared by Dictionary, FeatureVector and
+// FeatureStore, which makes ids from any of them comparable.
+//
+// Only the values that are kept are interned: the dictionary entries, the
+// titles and the stored features. Other tokens are only looked up, and the
+// ones never interned all get UNKNOWN. Lookups take no lock.
+public class SymbolTable {
+
+    public static final int UNKNOWN = -1;
+
+    private static final SymbolTable global = new SymbolTable();
+
+    // A value is put in `values` before its id is put in `ids`, so that an
+    // id read from `ids` always has its value there.
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[64];
+    private volatile int size;
+
+    public static SymbolTable getGlobal() {
+        return global;
+    }
+
+    // The id of `value`, or UNKNOWN if it has not been interned.
+    public int lookup(String value) {
+        Integer id = this.ids.get(value);
+        return id != null ? id : UNKNOWN;
+    }
+
+    public int intern(String value) {
+        Integer id = this.ids.get(value);
+        if (id != null) {
+            return id;
+        }
+
+        synchronized (this) {
+            id = this.ids.get(value);
+            if (id != null) {
+                return id;
+            }
+
+            id = this.size;
+            if (id == this.values.length) {
+                this.values = Arrays.copyOf(this.values, 2 * id);
+            }
+            this.values[id] = value;
+            this.size = id + 1;
+            this.ids.put(value, id);
+            return id;
+        }
+    }
+
+    public String getValue(int id) {
+        if (id < 0 || id >= this.size) {
+            throw new IndexOutOfBoundsException(id);
+        }
+
+        return this.values[id];
+    }
+
+    public int size() {
+        return this.size;
+    }
+}
@@ -11,6 +11,7 @@ public class Token {
 
     private Type type;
     private String value;
+    private int symbol = -1;
 
     public Token(Type type, String value) {
         this.type = type;
@@ -21,6 +22,27 @@ public class Token {
         return this.value;
     }
 
+    // Id of the value in the global SymbolTable, or SymbolTable.UNKNOWN if
+    // it has not been interned. It is looked up on first use, and again
+    // until it is found, so that a value interned later still matches.
+    public int getSymbol() {
+        if (this.symbol < 0) {
+            this.symbol = SymbolTable.getGlobal().lookup(this.value);
+        }
+
+        return this.symbol;
+    }
+
+    // Like getSymbol(), but interns the value first. Only for tokens that
+    // are kept, such as dictionary entries and titles.
+    public int internSymbol() {
+        if (this.symbol < 0) {
+            this.symbol = SymbolTable.getGlobal().intern(this.value);
+        }
+
+        return this.symbol;
+    }
+
     public Type getType() {
         return this.type;
     }
@@ -0,0 +1,497 @@
+package com.example;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+// Sets of gazetteer entries compiled into a single trie over token
+// symbols, so that looking them up at a position walks the input once
+// instead of comparing it with every entry. The edges of all nodes share a
+// single open-addressing table keyed by the parent node and the symbol.
+// Symbols are numbered within the trie in order of first appearance, so
+// that the tables do not depend on the global SymbolTable and can be saved
+// as they are, see write().
+//
+// match() keeps the semantics of the linear scan it replaces: the entry
+// reported is the first one of the set, in list order, that the input
+// starts with, which is not necessarily the longest. matchAll() does the
+// same for every set at once, at a cost that depends on the entries found
+// rather than on the number of sets.
+public class TokenTrie {
+
+    // Marks the nodes no entry of a set ends at.
+    private static final int NO_ENTRY = Integer.MAX_VALUE;
+
+    private static final long EMPTY_KEY = -1L;
+
+    // The counts write() puts ahead of the tables, padded to 8 bytes.
+    private static final int HEADER_SIZE = 24;
+
+    private int setCount;
+    private int nodeCount;
+
+    // The sets with an entry ending at a node are chained from
+    // terminalHeads[node] through terminalNext, each with the index of the
+    // first such entry of the set. Node 0 is the root.
+    private int[] terminalHeads;
+    private int[] terminalSets;
+    private int[] terminalEntries;
+    private int[] terminalNext;
+    private int terminalCount;
+
+    private long[] keys;
+    private int[] children;
+    private int mask;
+
+    // localIds[symbol] is the trie's own id of a global symbol, or -1, and
+    // symbols[id] the global symbol of an id.
+    private int[] localIds;
+    private int[] symbols;
+    private int symbolCount;
+
+    // Set i holds sets[i], the entries of one gazetteer category.
+    public TokenTrie(List<List<List<Token>>> sets) {
+        List<List<int[]>> symbolSets = new ArrayList<>(sets.size());
+        for (List<List<Token>> entries : sets) {
+            List<int[]> symbolEntries = new ArrayList<>(entries.size());
+            for (List<Token> entry : entries) {
+                int[] symbols = new int[entry.size()];
+                for (int i = 0; i < symbols.length; ++i) {
+                    symbols[i] = entry.get(i).internSymbol();
+                }
+                symbolEntries.add(symbols);
+            }
+            symbolSets.add(symbolEntries);
+        }
+
+        build(symbolSets);
+    }
+
+    private TokenTrie() {
+    }
+
+    private void build(List<List<int[]>> sets) {
+        this.setCount = sets.size();
+
+        int tokenCount = 0;
+        int entryCount = 0;
+        int maxSymbol = -1;
+        for (List<int[]> entries : sets) {
+            for (int[] entry : entries) {
+                tokenCount += entry.length;
+                for (int symbol : entry) {
+                    maxSymbol = Math.max(maxSymbol, symbol);
+                }
+            }
+            entryCount += entries.size();
+        }
+
+        this.localIds = new int[maxSymbol + 1];
+        Arrays.fill(this.localIds, -1);
+        this.symbols = new int[tokenCount];
+
+        this.terminalHeads = new int[tokenCount + 1];
+        this.terminalHeads[0] = -1;
+        this.nodeCount = 1;
+        this.terminalSets = new int[entryCount];
+        this.terminalEntries = new int[entryCount];
+        this.terminalNext = new int[entryCount];
+
+        int capacity = Integer.highestOneBit(Math.max(2 * tokenCount, 1)) << 1;
+        this.keys = new long[capacity];
+        this.children = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(this.keys, EMPTY_KEY);
+
+        for (int set = 0; set < sets.size(); ++set) {
+            List<int[]> entries = sets.get(set);
+            for (int e = 0; e < entries.size(); ++e) {
+                int node = 0;
+                for (int symbol : entries.get(e)) {
+                    node = addChild(node, getLocalId(symbol));
+                }
+
+                if (getFirstEntry(node, set) == NO_ENTRY) {
+                    addTerminal(node, set, e);
+                }
+            }
+        }
+    }
+
+    // Reads a trie saved with write() at `at` in the little-endian
+    // `buffer`. The tables are copied out in bulk as they are, and only the
+    // symbols are interned again.
+    TokenTrie(ByteBuffer buffer, int at) {
+        this.setCount = buffer.getInt(at);
+        this.nodeCount = buffer.getInt(at + 4);
+        this.terminalCount = buffer.getInt(at + 8);
+        int capacity = buffer.getInt(at + 12);
+        this.symbolCount = buffer.getInt(at + 16);
+        at += HEADER_SIZE;
+
+        this.keys = new long[capacity];
+        buffer.slice(at, capacity * Long.BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .asLongBuffer()
+            .get(this.keys);
+        at += capacity * Long.BYTES;
+        this.mask = capacity - 1;
+
+        this.children = getInts(buffer, at, capacity);
+        at += capacity * Integer.BYTES;
+        this.terminalHeads = getInts(buffer, at, this.nodeCount);
+        at += this.nodeCount * Integer.BYTES;
+        this.terminalSets = getInts(buffer, at, this.terminalCount);
+        at += this.terminalCount * Integer.BYTES;
+        this.terminalEntries = getInts(buffer, at, this.terminalCount);
+        at += this.terminalCount * Integer.BYTES;
+        this.terminalNext = getInts(buffer, at, this.terminalCount);
+        at += this.terminalCount * Integer.BYTES;
+
+        SymbolTable global = SymbolTable.getGlobal();
+        this.symbols = new int[this.symbolCount];
+        int maxSymbol = -1;
+        for (int id = 0; id < this.symbolCount; ++id) {
+            int length = buffer.getInt(at);
+            byte[] bytes = new byte[length];
+            buffer.get(at + Integer.BYTES, bytes);
+            at += Integer.BYTES + length;
+
+            this.symbols[id] = global.intern(
+                new String(bytes, StandardCharsets.UTF_8)
+            );
+            maxSymbol = Math.max(maxSymbol, this.symbols[id]);
+        }
+
+        this.localIds = new int[maxSymbol + 1];
+        Arrays.fill(this.localIds, -1);
+        for (int id = 0; id < this.symbolCount; ++id) {
+            this.localIds[this.symbols[id]] = id;
+        }
+    }
+
+    private static int[] getInts(ByteBuffer buffer, int at, int count) {
+        int[] ints = new int[count];
+        buffer.slice(at, count * Integer.BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .asIntBuffer()
+            .get(ints);
+
+        return ints;
+    }
+
+    // The number of bytes write() takes up.
+    int getByteSize() {
+        SymbolTable global = SymbolTable.getGlobal();
+
+        int size = HEADER_SIZE
+            + this.keys.length * (Long.BYTES + Integer.BYTES)
+            + this.nodeCount * Integer.BYTES
+            + this.terminalCount * 3 * Integer.BYTES;
+        for (int id = 0; id < this.symbolCount; ++id) {
+            size += Integer.BYTES + global.getValue(this.symbols[id])
+                .getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        return size;
+    }
+
+    // Saves the counts, the tables and then the value of every symbol, as
+    // an int length and UTF-8 bytes, at `at` in the little-endian `buffer`.
+    // `at` should be a multiple of 8 for the keys to be aligned.
+    void write(ByteBuffer buffer, int at) {
+        buffer.putInt(at, this.setCount);
+        buffer.putInt(at + 4, this.nodeCount);
+        buffer.putInt(at + 8, this.terminalCount);
+        buffer.putInt(at + 12, this.keys.length);
+        buffer.putInt(at + 16, this.symbolCount);
+        buffer.putInt(at + 20, 0);
+        at += HEADER_SIZE;
+
+        buffer.slice(at, this.keys.length * Long.BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .asLongBuffer()
+            .put(this.keys);
+        at += this.keys.length * Long.BYTES;
+
+        at = putInts(buffer, at, this.children, this.children.length);
+        at = putInts(buffer, at, this.terminalHeads, this.nodeCount);
+        at = putInts(buffer, at, this.terminalSets, this.terminalCount);
+        at = putInts(buffer, at, this.terminalEntries, this.terminalCount);
+        at = putInts(buffer, at, this.terminalNext, this.terminalCount);
+
+        SymbolTable global = SymbolTable.getGlobal();
+        for (int id = 0; id < this.symbolCount; ++id) {
+            byte[] bytes = global.getValue(this.symbols[id])
+                .getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(at, bytes.length);
+            buffer.put(at + Integer.BYTES, bytes);
+            at += Integer.BYTES + bytes.length;
+        }
+    }
+
+    private static int putInts(
+        ByteBuffer buffer,
+        int at,
+        int[] ints,
+        int count
+    ) {
+        buffer.slice(at, count * Integer.BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .asIntBuffer()
+            .put(ints, 0, count);
+
+        return at + count * Integer.BYTES;
+    }
+
+    public int getSetCount() {
+        return this.setCount;
+    }
+
+    // The entries of every set as global symbols, in list order, with only
+    // the first of identical entries kept. They are all that match()
+    // depends on.
+    List<List<int[]>> getEntries() {
+        int[] parents = new int[this.nodeCount];
+        int[] nodeSymbols = new int[this.nodeCount];
+        for (int slot = 0; slot < this.keys.length; ++slot) {
+            if (this.keys[slot] != EMPTY_KEY) {
+                int child = this.children[slot];
+                parents[child] = (int)(this.keys[slot] >>> 32);
+                nodeSymbols[child] = this.symbols[(int)this.keys[slot]];
+            }
+        }
+
+        // Children are always numbered after their parents.
+        int[] depths = new int[this.nodeCount];
+        for (int node = 1; node < this.nodeCount; ++node) {
+            depths[node] = depths[parents[node]] + 1;
+        }
+
+        List<List<Long>> terminals = new ArrayList<>();
+        for (int set = 0; set < this.setCount; ++set) {
+            terminals.add(new ArrayList<>());
+        }
+        for (int node = 0; node < this.nodeCount; ++node) {
+            int t = this.terminalHeads[node];
+            for (; t >= 0; t = this.terminalNext[t]) {
+                terminals.get(this.terminalSets[t]).add(
+                    ((long)this.terminalEntries[t] << 32) | node
+                );
+            }
+        }
+
+        List<List<int[]>> entries = new ArrayList<>(this.setCount);
+        for (List<Long> setTerminals : terminals) {
+            Collections.sort(setTerminals);
+
+            List<int[]> setEntries = new ArrayList<>(setTerminals.size());
+            for (long terminal : setTerminals) {
+                int node = (int)terminal;
+                int[] entry = new int[depths[node]];
+                for (int i = entry.length - 1; i >= 0; --i) {
+                    entry[i] = nodeSymbols[node];
+                    node = parents[node];
+                }
+                setEntries.add(entry);
+            }
+            entries.add(setEntries);
+        }
+
+        return entries;
+    }
+
+    // A trie of the same sets, but with only the entries of those in
+    // `sets`, so that matching it walks none of the others. The sets keep
+    // their indices, and the kept ones match exactly as they do here.
+    TokenTrie select(BitSet sets) {
+        List<List<int[]>> entries = getEntries();
+        for (int set = 0; set < this.setCount; ++set) {
+            if (!sets.get(set)) {
+                entries.set(set, List.of());
+            }
+        }
+
+        TokenTrie trie = new TokenTrie();
+        trie.build(entries);
+        return trie;
+    }
+
+    // The length of the first entry of `set` the input starts with at
+    // `pos`, or 0.
+    public int match(List<Token> input, int pos, int set) {
+        if (pos < 0) {
+            return 0;
+        }
+
+        int first = getFirstEntry(0, set);
+        int length = 0;
+
+        int node = 0;
+        for (int i = pos; i < input.size(); ++i) {
+            node = getChild(node, input.get(i).getSymbol());
+            if (node < 0) {
+                break;
+            }
+
+            int entry = getFirstEntry(node, set);
+            if (entry < first) {
+                first = entry;
+                length = i - pos + 1;
+            }
+        }
+
+        return length;
+    }
+
+    // Puts the n sets with an entry the input starts with at `pos` in
+    // sets[0..n), each with match(input, pos, set) in lengths, and returns
+    // n. Both need room for getSetCount() sets. `firsts` is scratch space
+    // with an element per set, all 0 as allocated, and left so.
+    public int matchAll(
+        List<Token> input,
+        int pos,
+        int[] firsts,
+        int[] sets,
+        int[] lengths
+    ) {
+        if (pos < 0) {
+            return 0;
+        }
+
+        int n = visit(0, 0, firsts, sets, lengths, 0);
+
+        int node = 0;
+        for (int i = pos; i < input.size(); ++i) {
+            node = getChild(node, input.get(i).getSymbol());
+            if (node < 0) {
+                break;
+            }
+
+            n = visit(node, i - pos + 1, firsts, sets, lengths, n);
+        }
+
+        // Entries of length 0 are no match, as in match().
+        int found = 0;
+        for (int k = 0; k < n; ++k) {
+            firsts[sets[k]] = 0;
+            if (lengths[k] > 0) {
+                sets[found] = sets[k];
+                lengths[found++] = lengths[k];
+            }
+        }
+
+        return found;
+    }
+
+    // firsts[set] is 1 more than the first entry of the set found so far,
+    // and sets[0..n) the sets found.
+    private int visit(
+        int node,
+        int length,
+        int[] firsts,
+        int[] sets,
+        int[] lengths,
+        int n
+    ) {
+        int t = this.terminalHeads[node];
+        for (; t >= 0; t = this.terminalNext[t]) {
+            int set = this.terminalSets[t];
+            int first = this.terminalEntries[t] + 1;
+
+            if (firsts[set] == 0) {
+                firsts[set] = first;
+                sets[n] = set;
+                lengths[n++] = length;
+            } else if (first < firsts[set]) {
+                firsts[set] = first;
+                for (int k = 0; k < n; ++k) {
+                    if (sets[k] == set) {
+                        lengths[k] = length;
+                    }
+                }
+            }
+        }
+
+        return n;
+    }
+
+    private int getFirstEntry(int node, int set) {
+        int t = this.terminalHeads[node];
+        for (; t >= 0; t = this.terminalNext[t]) {
+            if (this.terminalSets[t] == set) {
+                return this.terminalEntries[t];
+            }
+        }
+
+        return NO_ENTRY;
+    }
+
+    private void addTerminal(int node, int set, int entry) {
+        int t = this.terminalCount++;
+        this.terminalSets[t] = set;
+        this.terminalEntries[t] = entry;
+        this.terminalNext[t] = this.terminalHeads[node];
+        this.terminalHeads[node] = t;
+    }
+
+    private int getChild(int node, int symbol) {
+        // Most tokens are in no entry at all, many not even interned, and
+        // are told apart here without probing the table.
+        if (symbol < 0
+            || symbol >= this.localIds.length
+            || this.localIds[symbol] < 0) {
+
+            return -1;
+        }
+
+        long key = getKey(node, this.localIds[symbol]);
+        for (int slot = getSlot(key); ; slot = (slot + 1) & this.mask) {
+            if (this.keys[slot] == key) {
+                return this.children[slot];
+            } else if (this.keys[slot] == EMPTY_KEY) {
+                return -1;
+            }
+        }
+    }
+
+    private int getLocalId(int symbol) {
+        if (this.localIds[symbol] < 0) {
+            this.localIds[symbol] = this.symbolCount;
+            this.symbols[this.symbolCount++] = symbol;
+        }
+
+        return this.localIds[symbol];
+    }
+
+    private int addChild(int node, int id) {
+        long key = getKey(node, id);
+        int slot = getSlot(key);
+        while (this.keys[slot] != EMPTY_KEY) {
+            if (this.keys[slot] == key) {
+                return this.children[slot];
+            }
+            slot = (slot + 1) & this.mask;
+        }
+
+        int child = this.nodeCount++;
+        this.terminalHeads[child] = -1;
+        this.keys[slot] = key;
+        this.children[slot] = child;
+
+        return child;
+    }
+
+    private static long getKey(int node, int id) {
+        return ((long)node << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    private int getSlot(long key) {
+        return (int)((key * 0x9E3779B97F4A7C15L) >>> 32) & this.mask;
+    }
+}
@@ -0,0 +1,176 @@
+package com.example;
+
+import java.util.Random;
+
+// Exact k-NN index over the rows of a FeatureStore. The tree is laid out
+// implicitly in `order`: a node spanning order[lo..hi) keeps its vantage
+// point at order[lo], the rows not farther than radii[lo] from it in
+// order[lo + 1..splits[lo]) and the rest in order[splits[lo]..hi).
+public class VantagePointTree {
+
+    private static final int LEAF_SIZE = 8;
+
+    // Distances are rounded floats, so the triangle inequality only holds up
+    // to a few ulps. Pruning is relaxed by this much to stay exact, and
+    // distances this close count as equal when the recall is measured.
+    static final float SLACK = 1e-4f;
+
+    private Random rnd = new Random(1337);
+
+    private FeatureStore store;
+    private DistanceKernel kernel;
+    private boolean metric;
+
+    private int[] order;
+    private float[] radii;
+    private int[] splits;
+
+    public VantagePointTree(FeatureStore store, DistanceKernel kernel) {
+        this.store = store;
+        this.kernel = kernel;
+        this.metric = kernel.isMetric();
+
+        int size = store.getSize();
+        this.order = new int[size];
+        this.radii = new float[size];
+        this.splits = new int[size];
+
+        for (int i = 0; i < size; ++i) {
+            this.order[i] = i;
+        }
+
+        if (this.metric) {
+            build(0, size, new float[size]);
+        }
+    }
+
+    // Without a true metric the pruning rules do not hold and the tree must
+    // not be searched; callers should fall back to a linear scan.
+    public boolean isMetric() {
+        return this.metric;
+    }
+
+    public int getSize() {
+        return this.order.length;
+    }
+
+    // Offers the nearest rows of `store` to the heap and returns the number
+    // of distances that had to be evaluated.
+    public int search(FeatureStore queries, int query, NeighbourHeap heap) {
+        assert(this.metric);
+
+        return search(queries, query, heap, 0, this.order.length);
+    }
+
+    private int search(
+        FeatureStore queries,
+        int query,
+        NeighbourHeap heap,
+        int lo,
+        int hi
+    ) {
+        if (hi - lo <= LEAF_SIZE) {
+            for (int i = lo; i < hi; ++i) {
+                heap.offer(
+                    this.order[i],
+                    this.kernel.getDistance(
+                        queries,
+                        query,
+                        this.store,
+                        this.order[i],
+                        heap.getWorstDistance()
+                    )
+                );
+            }
+
+            return hi - lo;
+        }
+
+        int vp = this.order[lo];
+        float d = this.kernel.getDistance(
+            queries, query, this.store, vp, Float.POSITIVE_INFINITY
+        );
+        heap.offer(vp, d);
+
+        int evaluations = 1;
+        float radius = this.radii[lo];
+        int split = this.splits[lo];
+
+        if (d <= radius) {
+            evaluations += search(queries, query, heap, lo + 1, split);
+            if (d + heap.getWorstDistance() + SLACK >= radius) {
+                evaluations += search(queries, query, heap, split, hi);
+            }
+        } else {
+            evaluations += search(queries, query, heap, split, hi);
+            if (d - heap.getWorstDistance() - SLACK <= radius) {
+                evaluations += search(queries, query, heap, lo + 1, split);
+            }
+        }
+
+        return evaluations;
+    }
+
+    private void build(int lo, int hi, float[] distances) {
+        if (hi - lo <= LEAF_SIZE) {
+            return;
+        }
+
+        swap(lo, lo + rnd.nextInt(hi - lo), distances);
+        int vp = this.order[lo];
+
+        for (int i = lo + 1; i < hi; ++i) {
+            distances[i] = this.kernel.getDistance(
+                this.store, vp, this.store, this.order[i],
+                Float.POSITIVE_INFINITY
+            );
+        }
+
+        int median = (lo + 1 + hi) >>> 1;
+        select(lo + 1, hi, median, distances);
+
+        this.radii[lo] = distances[median];
+        this.splits[lo] = median;
+
+        build(lo + 1, median, distances);
+        build(median, hi, distances);
+    }
+
+    // Quickselect: afterwards distances[lo..k) <= distances[k] <=
+    // distances[k + 1..hi), with the rows in `order` moved along.
+    private void select(int lo, int hi, int k, float[] distances) {
+        --hi;
+
+        while (lo < hi) {
+            float pivot = distances[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+
+            while (i <= j) {
+                while (distances[i] < pivot) ++i;
+                while (distances[j] > pivot) --j;
+                if (i <= j) {
+                    swap(i++, j--, distances);
+                }
+            }
+
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j, float[] distances) {
+        int row = this.order[i];
+        this.order[i] = this.order[j];
+        this.order[j] = row;
+
+        float distance = distances[i];
+        distances[i] = distances[j];
+        distances[j] = distance;
+    }
+}
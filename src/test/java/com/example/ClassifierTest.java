@@ -0,0 +1,82 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.FeatureVector.METRIC;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+public class ClassifierTest {
+
+    private final static short featureFlags = (short)0b1111111111111111;
+
+    private List<FeatureVector> vectors;
+
+    @BeforeEach
+    void setUp() throws JsonProcessingException {
+        vectors = TestVectors.random(7, 200);
+    }
+
+    private Classifier newClassifier(
+        List<FeatureVector> training,
+        List<FeatureVector> testing
+    ) {
+        return new Classifier(
+            5,
+            training,
+            testing,
+            2,
+            0.7f,
+            List.of(),
+            featureFlags,
+            METRIC.EUCLIDEAN
+        );
+    }
+
+    @Test
+    void TestEvaluateIndexIfTrainingHasDuplicatesThenCountsEitherCopy() {
+        // Rows r and r + 100 are the same vector, so a query is always as
+        // far from one as from the other.
+        List<FeatureVector> training = new ArrayList<>();
+        training.addAll(vectors.subList(0, 100));
+        training.addAll(vectors.subList(0, 100));
+        List<FeatureVector> testing = vectors.subList(100, 200);
+
+        int[][] exact = newClassifier(training, testing)
+            .classifyBatch(testing).second;
+
+        // A narrow beam, so that the index returns the other copy of some
+        // of the exact neighbours.
+        Classifier classifier = newClassifier(training, testing);
+        classifier.setHnswParameters(2, 16, 5);
+        classifier.setIndex(Classifier.INDEX.HNSW);
+        int[][] found = classifier.classifyBatch(testing).second;
+
+        int sameRow = 0;
+        int sameVector = 0;
+        for (int q = 0; q < testing.size(); ++q) {
+            for (int i : found[q]) {
+                for (int j : exact[q]) {
+                    if (i == j) ++sameRow;
+                }
+                for (int j : exact[q]) {
+                    if (i % 100 == j % 100) {
+                        ++sameVector;
+                        break;
+                    }
+                }
+            }
+        }
+        assertTrue(sameVector > sameRow);
+
+        classifier.evaluateIndex();
+        assertTrue(
+            classifier.getRecall() >= sameVector / (5f * testing.size())
+        );
+    }
+}
@@ -0,0 +1,111 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xml.sax.SAXException;
+
+public class DatasetTest {
+
+    @TempDir
+    File dir;
+
+    private String filename;
+
+    private static String article(String places, String title) {
+        return "<REUTERS>" + places + "<TEXT><TITLE>" + title
+            + "</TITLE><BODY>" + title.toLowerCase()
+            + " talks</BODY></TEXT></REUTERS>\n";
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        StringBuilder sgml = new StringBuilder("<ROOT>\n");
+        for (int i = 0; i < 5; ++i) {
+            for (Article.LABEL label : Article.LABEL.values()) {
+                String place
+                    = label.name().toLowerCase().replaceAll("_", "-");
+                sgml.append(article(
+                    "<PLACES><D>" + place + "</D></PLACES>", place + " " + i
+                ));
+            }
+        }
+        sgml.append(article("<PLACES></PLACES>", "None"));
+        sgml.append(article(
+            "<PLACES><D>japan</D><D>canada</D></PLACES>", "Both"
+        ));
+        sgml.append(article("", "Unplaced"));
+        sgml.append("</ROOT>\n");
+
+        File file = new File(dir, "dataset.sgm");
+        Files.writeString(file.toPath(), sgml.toString());
+        this.filename = file.getPath();
+    }
+
+    @Test
+    void TestLoadFromSGMLFileIfArticlesAreSkippedThenReturnsTheTestingSplit()
+        throws ParserConfigurationException, SAXException, IOException {
+
+        Pair<Dataset, Dataset> splitted
+            = Dataset.loadFromSGMLFile(filename, List.of()).split(0.5f);
+        int[] skipped = new int[Article.LABEL.values().length];
+        for (int i = 0; i < splitted.first.getSize(); ++i) {
+            ++skipped[splitted.first.getArticle(i).getLabel().ordinal()];
+        }
+
+        Dataset testing
+            = Dataset.loadFromSGMLFile(filename, List.of(), skipped);
+
+        // The split groups the articles by label, the file interleaves them.
+        assertEquals(splitted.second.getSize(), testing.getSize());
+        for (Article.LABEL label : Article.LABEL.values()) {
+            assertEquals(
+                getContents(splitted.second, label),
+                getContents(testing, label)
+            );
+        }
+    }
+
+    @Test
+    void TestLoadQueriesFromSGMLFileIfArticlesHaveNoSingleLabelThenKeepsThem()
+        throws ParserConfigurationException, SAXException, IOException {
+
+        Dataset queries = Dataset.loadQueriesFromSGMLFile(filename);
+
+        assertEquals(33, queries.getSize());
+        assertEquals(
+            Article.LABEL.WEST_GERMANY, queries.getArticle(0).getLabel()
+        );
+        for (int i = 30; i < 33; ++i) {
+            assertNull(queries.getArticle(i).getLabel());
+        }
+        assertEquals("Unplaced", queries.getArticle(32).getTitle());
+        assertEquals("unplaced talks", queries.getArticle(32).getContent());
+    }
+
+    private static List<String> getContents(
+        Dataset dataset,
+        Article.LABEL label
+    ) {
+        List<String> contents = new ArrayList<>();
+        for (int i = 0; i < dataset.getSize(); ++i) {
+            Article article = dataset.getArticle(i);
+            if (article.getLabel() == label) {
+                contents.add(article.getTitle() + "\n" + article.getContent());
+            }
+        }
+
+        return contents;
+    }
+}
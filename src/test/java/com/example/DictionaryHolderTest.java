@@ -0,0 +1,162 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DictionaryHolderTest {
+
+    private static String json(String companies, String currencies) {
+        return """
+            {
+                "P": { "west_germany": [ "Helmut Kohl" ] },
+                "W": { "canada": [ "Quebec City", "Ottawa" ] },
+                "O": { "france": [ "Credit Lyonnais" ] },
+                "C": { "japan": [ %s ] },
+                "H": { "usa": [ "New York" ] },
+                "s": {
+                    "west_germany": [ "Bonn" ],
+                    "usa": [ "Washington" ],
+                    "france": [ "Paris" ],
+                    "uk": [ "London" ],
+                    "canada": [ "Ottawa" ],
+                    "japan": [ "Tokyo" ]
+                },
+                "m": {
+                    "west_germany": [ "mark" ],
+                    "usa": [ "dlr" ],
+                    "france": [ "franc" ],
+                    "uk": [ "stg" ],
+                    "canada": [ "canadian dlr" ],
+                    "japan": [ %s ]
+                }
+            }
+        """.formatted(companies, currencies);
+    }
+
+    private static List<Token> tokens(String text) {
+        return new Stemmer().stemTokens(new Tokenizer(text).scanTokens());
+    }
+
+    private static int count(Dictionary dict, List<Token> content) {
+        return dict.scan(content).getSize();
+    }
+
+    @Test
+    void TestReloadIfFileChangedThenPublishesNewDictionary(
+        @TempDir File dir
+    ) throws IOException, InterruptedException, ExecutionException {
+        File file = new File(dir, "dictionary.json");
+        Files.writeString(file.toPath(), json("\"Toyota\"", "\"yen\""));
+        List<Token> content = tokens("Sony and Toyota sold yen");
+
+        try (DictionaryHolder holder = new DictionaryHolder(file)) {
+            Dictionary before = holder.get();
+            assertEquals(2, count(before, content));
+
+            Files.writeString(
+                file.toPath(), json("\"Toyota\", \"Sony\"", "\"yen\"")
+            );
+            Dictionary after = holder.reload().get();
+
+            assertSame(after, holder.get());
+            assertEquals(3, count(after, content));
+            assertEquals(2, count(before, content));
+        }
+    }
+
+    @Test
+    void TestReloadIfModifiedIfFileUnchangedThenKeepsDictionary(
+        @TempDir File dir
+    ) throws IOException, InterruptedException, ExecutionException {
+        File file = new File(dir, "dictionary.json");
+        Files.writeString(file.toPath(), json("\"Toyota\"", "\"yen\""));
+
+        try (DictionaryHolder holder = new DictionaryHolder(file)) {
+            Dictionary before = holder.get();
+
+            assertSame(before, holder.reloadIfModified().get());
+            assertSame(before, holder.get());
+        }
+    }
+
+    @Test
+    void TestReloadIfFileIsInvalidThenKeepsDictionary(
+        @TempDir File dir
+    ) throws IOException {
+        File file = new File(dir, "dictionary.json");
+        Files.writeString(file.toPath(), json("\"Toyota\"", "\"yen\""));
+
+        try (DictionaryHolder holder = new DictionaryHolder(file)) {
+            Dictionary before = holder.get();
+
+            Files.writeString(file.toPath(), "{ \"C\": ");
+            assertThrows(ExecutionException.class, () -> holder.reload().get());
+            assertSame(before, holder.get());
+        }
+    }
+
+    @Test
+    void TestReloadIfFileIsCompiledThenLoadsIt(
+        @TempDir File dir
+    ) throws IOException, InterruptedException, ExecutionException {
+        File file = new File(dir, "dictionary.bin");
+        new Dictionary(json("\"Toyota\"", "\"yen\"")).writeCompiled(file);
+        List<Token> content = tokens("Sony and Toyota sold yen");
+
+        try (DictionaryHolder holder = new DictionaryHolder(file)) {
+            assertEquals(2, count(holder.get(), content));
+
+            new Dictionary(json("\"Toyota\", \"Sony\"", "\"yen\""))
+                .writeCompiled(file);
+            assertEquals(3, count(holder.reload().get(), content));
+        }
+    }
+
+    @Test
+    void TestIsAffectedIfSetChangedThenOnlyArticlesWithItsTokens()
+        throws IOException {
+
+        Dictionary before = new Dictionary(json("\"Toyota\"", "\"yen\""));
+        Dictionary after
+            = new Dictionary(json("\"Toyota\", \"Sony Corp\"", "\"yen\""));
+
+        int[] changed = after.getChangedSymbols(before);
+        assertEquals(0, before.getChangedSymbols(before).length);
+
+        List<Token> unaffected = tokens("Honda sold yen in Paris");
+        assertFalse(DictionaryHolder.isAffected(unaffected, changed));
+        assertEquals(count(before, unaffected), count(after, unaffected));
+
+        List<Token> affected = tokens("Sony Corp sold yen");
+        assertTrue(DictionaryHolder.isAffected(affected, changed));
+        assertEquals(count(before, affected) + 1, count(after, affected));
+
+        // Reordering entries may change which one matches.
+        Dictionary reordered
+            = new Dictionary(json("\"Sony Corp\", \"Toyota\"", "\"yen\""));
+        assertTrue(DictionaryHolder.isAffected(
+            tokens("Toyota"), reordered.getChangedSymbols(after)
+        ));
+        assertFalse(DictionaryHolder.isAffected(
+            tokens("yen"), reordered.getChangedSymbols(after)
+        ));
+
+        Dictionary empty
+            = new Dictionary(json("\"Toyota\"", "\"yen\", \"\""));
+        assertNull(empty.getChangedSymbols(before));
+        assertTrue(DictionaryHolder.isAffected(tokens("Paris"), null));
+    }
+}
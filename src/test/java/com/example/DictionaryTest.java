@@ -2,11 +2,17 @@ package com.example;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
@@ -582,4 +588,188 @@ public class DictionaryTest {
             stemmer.stemTokens(tokenizer.scanTokens()), 0
         ));
     }
+
+    @Test
+    void TestScanIfTextHoldsEntriesThenMatchesLookupsAtEveryPosition() {
+        Tokenizer tokenizer = new Tokenizer(
+            "Helmut Kohl met Toyota in Quebec City and Ottawa about the"
+                + " canadian dollar, the yen and Banque Francaise in New York"
+                + " and Paris, while Sony sold sterling in Bonn"
+        );
+        List<Token> tokens
+            = stemmer.stemTokens(tokenizer.scanTokens());
+
+        GazetteerMatches matches = dict.scan(tokens);
+        assertTrue(matches.getSize() > 0);
+
+        int politicians = dict.getCategory(
+            Dictionary.POLITICIANS, Article.LABEL.WEST_GERMANY
+        );
+        int cities = dict.getCategory(Dictionary.CITIES, Article.LABEL.CANADA);
+        int banks = dict.getCategory(Dictionary.BANKS, Article.LABEL.FRANCE);
+        int companies
+            = dict.getCategory(Dictionary.COMPANIES, Article.LABEL.JAPAN);
+        int states = dict.getCategory(Dictionary.STATES, Article.LABEL.USA);
+
+        for (int i = 0; i < tokens.size(); ++i) {
+            assertEquals(
+                dict.isWestGermanyPolitician(tokens, i),
+                matches.getLength(i, politicians)
+            );
+            assertEquals(
+                dict.isCanadianCity(tokens, i), matches.getLength(i, cities)
+            );
+            assertEquals(
+                dict.isFrenchBank(tokens, i), matches.getLength(i, banks)
+            );
+            assertEquals(
+                dict.isJapaneseCompany(tokens, i),
+                matches.getLength(i, companies)
+            );
+            assertEquals(
+                dict.isStateInUSA(tokens, i), matches.getLength(i, states)
+            );
+            for (Article.LABEL country : Article.LABEL.values()) {
+                assertEquals(
+                    dict.isCapital(country, tokens, i),
+                    matches.getLength(
+                        i, dict.getCategory(Dictionary.CAPITALS, country)
+                    )
+                );
+                assertEquals(
+                    dict.isCurrency(country, tokens, i),
+                    matches.getLength(
+                        i, dict.getCategory(Dictionary.CURRENCIES, country)
+                    )
+                );
+            }
+        }
+
+        for (int span = 1; span < matches.getSize(); ++span) {
+            assertTrue(matches.getStart(span - 1) <= matches.getStart(span));
+        }
+    }
+
+    @Test
+    void TestScanIfCategoriesAreSelectedThenMatchesOnlyThose() {
+        List<Token> tokens = stemmer.stemTokens(new Tokenizer(
+            "Helmut Kohl met Toyota in Quebec City and Ottawa about the"
+                + " canadian dollar, the yen and Banque Francaise in Paris"
+        ).scanTokens());
+        GazetteerMatches all = dict.scan(tokens);
+
+        BitSet categories = new BitSet();
+        categories.set(
+            dict.getCategory(Dictionary.CITIES, Article.LABEL.CANADA)
+        );
+        categories.set(
+            dict.getCategory(Dictionary.CAPITALS, Article.LABEL.CANADA)
+        );
+        categories.set(
+            dict.getCategory(Dictionary.CURRENCIES, Article.LABEL.JAPAN)
+        );
+        GazetteerMatches some = dict.scan(tokens, categories);
+
+        int span = 0;
+        for (int i = 0; i < all.getSize(); ++i) {
+            if (!categories.get(all.getCategory(i))) {
+                continue;
+            }
+            assertEquals(all.getStart(i), some.getStart(span));
+            assertEquals(all.getCategory(i), some.getCategory(span));
+            assertEquals(all.getLength(i), some.getLength(span));
+            ++span;
+        }
+        assertEquals(span, some.getSize());
+        assertTrue(span > 0 && span < all.getSize());
+
+        GazetteerMatches none = dict.scan(tokens, new BitSet());
+        assertEquals(0, none.getSize());
+        assertEquals(
+            0,
+            none.getLength(
+                0,
+                dict.getCategory(
+                    Dictionary.POLITICIANS, Article.LABEL.WEST_GERMANY
+                )
+            )
+        );
+    }
+
+    @Test
+    void TestLoadCompiledIfWrittenThenMatchesTheSameEntries(
+        @TempDir File dir
+    ) throws IOException {
+        File file = new File(dir, "dictionary.bin");
+        dict.writeCompiled(file);
+        Dictionary loaded = Dictionary.loadCompiled(file);
+
+        List<Token> tokens = stemmer.stemTokens(new Tokenizer(
+            "Richard Weizsaecker and Helmut Kohl in Quebec City, St. John's"
+                + " and Toronto, Banque de l'Union Europeenne, Sony in"
+                + " New York and Alabama, Washington, canadian dlr and yen"
+        ).scanTokens());
+
+        GazetteerMatches expected = dict.scan(tokens);
+        GazetteerMatches actual = loaded.scan(tokens);
+        assertTrue(expected.getSize() > 0);
+        assertEquals(expected.getSize(), actual.getSize());
+        for (int span = 0; span < expected.getSize(); ++span) {
+            assertEquals(expected.getStart(span), actual.getStart(span));
+            assertEquals(expected.getCategory(span), actual.getCategory(span));
+            assertEquals(expected.getLength(span), actual.getLength(span));
+        }
+
+        for (int i = 0; i < tokens.size(); ++i) {
+            assertEquals(
+                dict.isUSACurrency(tokens, i), loaded.isUSACurrency(tokens, i)
+            );
+        }
+    }
+
+    @Test
+    void TestLoadCompiledIfFileIsNotACompiledDictionaryThenThrows(
+        @TempDir File dir
+    ) throws IOException {
+        File file = new File(dir, "dictionary.json");
+        Files.writeString(file.toPath(), "{ \"P\": {} }");
+
+        assertThrows(IOException.class, () -> Dictionary.loadCompiled(file));
+    }
+
+    @Test
+    void TestScanIfJsonHasNewCategoryThenMatchesItInTheSamePass()
+        throws JsonMappingException, JsonProcessingException {
+
+        Dictionary extended = new Dictionary("""
+            {
+                "C": { "japan": [ "Toyota" ] },
+                "R": { "usa": [ "Federal Reserve" ], "opec": [ "OPEC" ] }
+            }
+        """);
+        List<Token> tokens = stemmer.stemTokens(new Tokenizer(
+            "Toyota told the Federal Reserve and OPEC"
+        ).scanTokens());
+
+        assertEquals(3, extended.getCategoryCount());
+        int reserve = extended.getCategory("R", Article.LABEL.USA);
+        int opec = extended.getCategory("R", "opec");
+        assertTrue(reserve >= 0 && opec >= 0 && reserve != opec);
+        assertEquals(-1, extended.getCategory("R", Article.LABEL.UK));
+        assertEquals(-1, extended.getCategory(Dictionary.BANKS, "france"));
+
+        GazetteerMatches matches = extended.scan(tokens);
+        assertEquals(3, matches.getSize());
+        assertEquals(
+            1,
+            matches.getLength(
+                0,
+                extended.getCategory(Dictionary.COMPANIES, Article.LABEL.JAPAN)
+            )
+        );
+        assertEquals(2, matches.getLength(3, reserve));
+        assertEquals(1, matches.getLength(6, opec));
+        assertEquals(0, matches.getLength(6, -1));
+        assertEquals(0, extended.isFrenchBank(tokens, 0));
+    }
 }
@@ -0,0 +1,171 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.FeatureVector.METRIC;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+
+public class DistanceKernelTest {
+
+    private final static double delta = 0.00001;
+    private final static short featureFlags = (short)0b1111111111111111;
+
+    private List<FeatureVector> vectors;
+
+    @BeforeEach
+    void setUp() throws JsonMappingException, JsonProcessingException {
+        String json = """
+            {
+                "P": { "west_germany": [ "Helmut Kohl", "Willy Brandt" ] },
+                "W": { "canada": [ "Toronto", "Quebec City", "Ottawa" ] },
+                "O": { "france": [ "Credit Lyonnais" ] },
+                "C": { "japan": [ "Toyota", "Sony" ] },
+                "H": { "usa": [ "Texas", "New York" ] },
+                "s": {
+                    "west_germany": [ "Bonn" ],
+                    "usa": [ "Washington" ],
+                    "france": [ "Paris" ],
+                    "uk": [ "London" ],
+                    "canada": [ "Ottawa" ],
+                    "japan": [ "Tokyo" ]
+                },
+                "m": {
+                    "west_germany": [ "mark" ],
+                    "usa": [ "dlr" ],
+                    "france": [ "franc" ],
+                    "uk": [ "stg" ],
+                    "canada": [ "canadian dlr" ],
+                    "japan": [ "yen" ]
+                }
+            }
+        """;
+        Dictionary dict = new Dictionary(json);
+        Stemmer stemmer = new Stemmer();
+
+        String[][] articles = {
+            { "Kohl meets Toyota", "Helmut Kohl met Toyota in Bonn 12 EEC" },
+            { "Toronto mark", "Toronto Toronto Quebec City 3.5 mark U.K." },
+            { "Yen falls", "Tokyo yen fell 1987 Sony Sony GATT Texas" },
+            { "", "Paris franc Credit Lyonnais Compilation EEC EEC" },
+            { "Kohl in Paris", "" },
+            { "Texas dlr", "New York Texas dlr Washington Compiler 12" },
+            { "Ottawa talks", "Ottawa trade talks" }
+        };
+
+        vectors = new ArrayList<>();
+        for (String[] article : articles) {
+            vectors.add(new FeatureVector(
+                stemmer.stemTokens(new Tokenizer(article[1]).scanTokens()),
+                stemmer.stemTokens(new Tokenizer(article[0]).scanTokens()),
+                dict
+            ));
+        }
+    }
+
+    @Test
+    void TestGetDistanceIfCompiledThenMatchesFeatureVectorDistance() {
+        for (METRIC metric : METRIC.values()) {
+            DistanceKernel kernel
+                = DistanceKernel.compile(featureFlags, metric, 2, 0.7f);
+
+            for (FeatureVector v1 : vectors) {
+                for (FeatureVector v2 : vectors) {
+                    assertEquals(
+                        v1.getDistance(v2, 2, 0.7f, featureFlags, metric),
+                        kernel.getDistance(v1, v2)
+                    );
+                }
+            }
+        }
+    }
+
+    @Test
+    void TestGetDistanceIfNormalisersVaryThenEqualsFeatureVectorDistance() {
+        // The kernel must divide by the normalisers as FeatureVector does,
+        // so that ties between neighbours are broken the same way.
+        for (METRIC metric : METRIC.values()) {
+            for (int maxCount = 1; maxCount <= 7; ++maxCount) {
+                for (float maxFreq = 0.05f; maxFreq < 1.0f; maxFreq += 0.05f) {
+                    DistanceKernel kernel = DistanceKernel.compile(
+                        featureFlags, metric, maxCount, maxFreq
+                    );
+
+                    for (FeatureVector v1 : vectors) {
+                        for (FeatureVector v2 : vectors) {
+                            assertEquals(
+                                v1.getDistance(
+                                    v2, maxCount, maxFreq, featureFlags, metric
+                                ),
+                                kernel.getDistance(v1, v2)
+                            );
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void TestGetDistanceIfFeatureStoreThenMatchesFeatureVectorPath() {
+        FeatureStore store = new FeatureStore(vectors.subList(0, 3));
+        FeatureStore queries = store.encode(vectors.subList(3, 6));
+
+        for (METRIC metric : METRIC.values()) {
+            DistanceKernel kernel
+                = DistanceKernel.compile(featureFlags, metric, 2, 0.7f);
+
+            for (int q = 0; q < queries.getSize(); ++q) {
+                for (int r = 0; r < store.getSize(); ++r) {
+                    assertEquals(
+                        kernel.getDistance(vectors.get(3 + q), vectors.get(r)),
+                        kernel.getDistance(
+                            queries, q, store, r, Float.POSITIVE_INFINITY
+                        )
+                    );
+                }
+            }
+        }
+    }
+
+    @Test
+    void TestGetDistanceIfCutoffIsExceededThenReturnsInfinity() {
+        for (METRIC metric : METRIC.values()) {
+            DistanceKernel kernel
+                = DistanceKernel.compile(featureFlags, metric, 2, 0.7f);
+
+            FeatureVector v1 = vectors.get(0);
+            FeatureVector v2 = vectors.get(5);
+            float distance = kernel.getDistance(v1, v2);
+
+            assertEquals(distance, kernel.getDistance(v1, v2, distance));
+            assertEquals(
+                Float.POSITIVE_INFINITY,
+                kernel.getDistance(v1, v2, Math.nextDown(distance) / 2.0f)
+            );
+        }
+    }
+
+    @Test
+    void TestGetSimilarityIfCompiledThenMatchesFeatureVectorSimilarity() {
+        DistanceKernel kernel = DistanceKernel.compile(
+            featureFlags, METRIC.EUCLIDEAN, 2, 0.7f
+        );
+
+        for (FeatureVector v1 : vectors) {
+            for (FeatureVector v2 : vectors) {
+                assertEquals(
+                    v1.getSimilarity(v2, 2, 0.7f, featureFlags),
+                    kernel.getSimilarity(v1, v2),
+                    delta
+                );
+            }
+        }
+    }
+}
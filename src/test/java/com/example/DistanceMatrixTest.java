@@ -0,0 +1,102 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.FeatureVector.METRIC;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+public class DistanceMatrixTest {
+
+    private final static short featureFlags = (short)0b1111111111111111;
+
+    private List<FeatureVector> vectors;
+
+    @BeforeEach
+    void setUp() throws JsonProcessingException {
+        vectors = TestVectors.random(7, 100);
+    }
+
+    private static void assertMatchesKernel(
+        DistanceMatrix matrix,
+        FeatureStore queries,
+        FeatureStore store,
+        DistanceKernel kernel
+    ) {
+        for (int q = 0; q < queries.getSize(); ++q) {
+            for (int r = 0; r < store.getSize(); ++r) {
+                assertEquals(
+                    kernel.getDistance(
+                        queries, q, store, r, Float.POSITIVE_INFINITY
+                    ),
+                    matrix.get(q, r)
+                );
+            }
+        }
+    }
+
+    @Test
+    void TestGetIfOnHeapThenMatchesKernelDistance() {
+        FeatureStore store = new FeatureStore(vectors.subList(0, 70));
+        FeatureStore queries = store.encode(vectors.subList(70, 100));
+        DistanceKernel kernel
+            = DistanceKernel.compile(featureFlags, METRIC.EUCLIDEAN, 2, 0.7f);
+
+        DistanceMatrix matrix = new DistanceMatrix(queries, store, kernel, 2);
+
+        assertFalse(matrix.isOffHeap());
+        assertMatchesKernel(matrix, queries, store, kernel);
+    }
+
+    @Test
+    void TestGetIfOffHeapThenMatchesKernelDistance() {
+        FeatureStore store = new FeatureStore(vectors.subList(0, 70));
+        FeatureStore queries = store.encode(vectors.subList(70, 100));
+        DistanceKernel kernel
+            = DistanceKernel.compile(featureFlags, METRIC.TAXICAB, 2, 0.7f);
+
+        DistanceMatrix matrix
+            = new DistanceMatrix(queries, store, kernel, 2, 0);
+
+        assertTrue(matrix.isOffHeap());
+        assertMatchesKernel(matrix, queries, store, kernel);
+    }
+
+    @Test
+    void TestGetIfSplitIntoSeveralBuffersThenMatchesKernelDistance() {
+        FeatureStore store = new FeatureStore(vectors.subList(0, 70));
+        FeatureStore queries = store.encode(vectors.subList(70, 100));
+        DistanceKernel kernel
+            = DistanceKernel.compile(featureFlags, METRIC.CHEBYSHEV, 2, 0.7f);
+
+        // Seven query rows per buffer, so the last of five is partly full.
+        DistanceMatrix matrix = new DistanceMatrix(
+            queries, store, kernel, 2, 0, 7 * 70 * Float.BYTES
+        );
+
+        assertTrue(matrix.isOffHeap());
+        assertMatchesKernel(matrix, queries, store, kernel);
+    }
+
+    @Test
+    void TestNewIfRowDoesNotFitInBufferThenThrows() {
+        FeatureStore store = new FeatureStore(vectors.subList(0, 70));
+        FeatureStore queries = store.encode(vectors.subList(70, 100));
+        DistanceKernel kernel
+            = DistanceKernel.compile(featureFlags, METRIC.EUCLIDEAN, 2, 0.7f);
+
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new DistanceMatrix(
+                queries, store, kernel, 2, 0, 69 * Float.BYTES
+            )
+        );
+    }
+}
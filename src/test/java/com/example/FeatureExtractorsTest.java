@@ -0,0 +1,231 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.FeatureVector.METRIC;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+
+public class FeatureExtractorsTest {
+
+    private final static double delta = 0.00001;
+    private final static short featureFlags = (short)0b1111111111111111;
+
+    // The share of the content tokens that are numbers.
+    private static class NumberShare implements FeatureExtractor<int[]> {
+
+        @Override
+        public String getName() {
+            return "NUMBER_SHARE";
+        }
+
+        @Override
+        public int[] newState() {
+            return new int[2];
+        }
+
+        @Override
+        public void accept(int[] state, List<Token> content, int i) {
+            if (content.get(i).getType() == Token.Type.NUMBER) {
+                ++state[0];
+            }
+            ++state[1];
+        }
+
+        @Override
+        public float getValue(int[] state) {
+            return (state[1] == 0) ? 0.0f : state[0] / (float)state[1];
+        }
+    }
+
+    // Records the indices it is given.
+    private static class Indices implements FeatureExtractor<List<Integer>> {
+
+        private List<Integer> seen = new ArrayList<>();
+
+        @Override
+        public String getName() {
+            return "INDICES";
+        }
+
+        @Override
+        public List<Integer> newState() {
+            return this.seen;
+        }
+
+        @Override
+        public void accept(List<Integer> state, List<Token> content, int i) {
+            state.add(i);
+        }
+
+        @Override
+        public float getValue(List<Integer> state) {
+            return 0.0f;
+        }
+    }
+
+    private Dictionary dict;
+    private Stemmer stemmer;
+
+    @BeforeEach
+    void setUp() throws JsonMappingException, JsonProcessingException {
+        String json = """
+            {
+                "P": { "west_germany": [ "Helmut Kohl" ] },
+                "W": { "canada": [ "Quebec City", "Ottawa" ] },
+                "O": { "france": [ "Credit Lyonnais" ] },
+                "C": { "japan": [ "Toyota" ] },
+                "H": { "usa": [ "New York" ] },
+                "s": {
+                    "west_germany": [ "Bonn" ],
+                    "usa": [ "Washington" ],
+                    "france": [ "Paris" ],
+                    "uk": [ "London" ],
+                    "canada": [ "Ottawa" ],
+                    "japan": [ "Tokyo" ]
+                },
+                "m": {
+                    "west_germany": [ "mark" ],
+                    "usa": [ "dlr" ],
+                    "france": [ "franc" ],
+                    "uk": [ "stg" ],
+                    "canada": [ "canadian dlr" ],
+                    "japan": [ "yen" ]
+                }
+            }
+        """;
+        dict = new Dictionary(json);
+        stemmer = new Stemmer();
+    }
+
+    private List<FeatureVector> newVectors(FeatureExtractors extractors) {
+        String[][] articles = {
+            { "Kohl meets Toyota", "Helmut Kohl met Toyota in Bonn 12 EEC" },
+            { "Quebec mark", "Quebec City 3.5 mark 7 U.K. Credit Lyonnais" },
+            { "Yen falls", "Tokyo yen fell 1987 New York GATT" },
+            { "", "Paris franc EEC EEC" }
+        };
+
+        List<FeatureVector> vectors = new ArrayList<>();
+        for (String[] article : articles) {
+            vectors.add(new FeatureVector(
+                stemmer.stemTokens(new Tokenizer(article[1]).scanTokens()),
+                stemmer.stemTokens(new Tokenizer(article[0]).scanTokens()),
+                dict,
+                featureFlags,
+                extractors
+            ));
+        }
+
+        return vectors;
+    }
+
+    @Test
+    void TestFeatureVectorIfGazetteerConsumesTokensThenExtractorSeesAll() {
+        Indices indices = new Indices();
+        List<Token> content = stemmer.stemTokens(new Tokenizer(
+            "Helmut Kohl in Quebec City and New York"
+        ).scanTokens());
+
+        new FeatureVector(
+            content,
+            List.of(),
+            dict,
+            featureFlags,
+            new FeatureExtractors(List.of(indices))
+        );
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < content.size(); ++i) {
+            expected.add(i);
+        }
+        assertEquals(expected, indices.seen);
+    }
+
+    @Test
+    void TestGetDistanceIfExtractorIsEnabledThenAddsItsComponent() {
+        FeatureExtractors extractors
+            = new FeatureExtractors(List.of(new NumberShare()));
+        List<FeatureVector> plain = newVectors(FeatureExtractors.NONE);
+        List<FeatureVector> extended = newVectors(extractors);
+
+        DistanceKernel without
+            = DistanceKernel.compile(featureFlags, METRIC.TAXICAB, 2, 0.7f);
+        DistanceKernel with = DistanceKernel.compile(
+            featureFlags, METRIC.TAXICAB, 2, 0.7f, null, extractors
+        );
+        assertEquals(
+            without.getComponentCount() + 1, with.getComponentCount()
+        );
+
+        for (int i = 0; i < plain.size(); ++i) {
+            for (int j = 0; j < plain.size(); ++j) {
+                float share = extended.get(i).getExtractedValues()[0];
+                float other = extended.get(j).getExtractedValues()[0];
+
+                assertEquals(
+                    without.getDistance(plain.get(i), plain.get(j))
+                        + Math.abs(share - other),
+                    with.getDistance(extended.get(i), extended.get(j)),
+                    delta
+                );
+            }
+        }
+    }
+
+    @Test
+    void TestGetDistanceIfStoresHoldExtractedValuesThenMatchesVectorPath() {
+        FeatureExtractors extractors
+            = new FeatureExtractors(List.of(new NumberShare()));
+        List<FeatureVector> vectors = newVectors(extractors);
+
+        FeatureStore store = new FeatureStore(vectors);
+        OffHeapFeatureStore offHeap = new OffHeapFeatureStore(vectors);
+
+        for (METRIC metric : METRIC.values()) {
+            DistanceKernel kernel = DistanceKernel.compile(
+                featureFlags, metric, 2, 0.7f, null, extractors
+            );
+
+            for (int q = 0; q < vectors.size(); ++q) {
+                for (int r = 0; r < vectors.size(); ++r) {
+                    float expected
+                        = kernel.getDistance(vectors.get(q), vectors.get(r));
+                    assertEquals(
+                        expected,
+                        kernel.getDistance(
+                            store, q, store, r, Float.POSITIVE_INFINITY
+                        ),
+                        delta
+                    );
+                    assertEquals(
+                        expected,
+                        kernel.getDistance(
+                            store, q, offHeap, r, Float.POSITIVE_INFINITY
+                        ),
+                        delta
+                    );
+                }
+            }
+        }
+    }
+
+    @Test
+    void TestToBytesIfVectorsHaveExtractedValuesThenThrows() {
+        FeatureExtractors extractors
+            = new FeatureExtractors(List.of(new NumberShare()));
+        Model model = new Model(
+            newVectors(extractors), 2, 0.7f, featureFlags, List.of()
+        );
+
+        assertThrows(IOException.class, () -> ModelWriter.toBytes(model));
+    }
+}
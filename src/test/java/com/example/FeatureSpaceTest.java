@@ -0,0 +1,129 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.FeatureVector.METRIC;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+
+public class FeatureSpaceTest {
+
+    private final static double delta = 0.00001;
+    private final static short featureFlags = (short)0b1111111111111111;
+
+    private Dictionary dict;
+    private Stemmer stemmer;
+    private List<FeatureVector> vectors;
+
+    @BeforeEach
+    void setUp() throws JsonMappingException, JsonProcessingException {
+        String json = """
+            {
+                "P": { "west_germany": [ "Helmut Kohl", "Willy Brandt" ] },
+                "W": { "canada": [ "Toronto", "Quebec City", "Ottawa" ] },
+                "O": { "france": [ "Credit Lyonnais" ] },
+                "C": { "japan": [ "Toyota", "Sony" ] },
+                "H": { "usa": [ "Texas", "New York" ] },
+                "s": {
+                    "west_germany": [ "Bonn" ],
+                    "usa": [ "Washington" ],
+                    "france": [ "Paris" ],
+                    "uk": [ "London" ],
+                    "canada": [ "Ottawa" ],
+                    "japan": [ "Tokyo" ]
+                },
+                "m": {
+                    "west_germany": [ "mark" ],
+                    "usa": [ "dlr" ],
+                    "france": [ "franc" ],
+                    "uk": [ "stg" ],
+                    "canada": [ "canadian dlr" ],
+                    "japan": [ "yen" ]
+                }
+            }
+        """;
+        dict = new Dictionary(json);
+        stemmer = new Stemmer();
+
+        String[][] articles = {
+            { "Kohl meets Toyota", "Helmut Kohl met Toyota in Bonn 12 EEC" },
+            { "Toronto mark", "Toronto Toronto Quebec City 3.5 mark U.K." },
+            { "Yen falls", "Tokyo yen fell 1987 Sony Sony GATT Texas" },
+            { "", "Paris franc Credit Lyonnais Compilation EEC EEC" },
+            { "Kohl in Paris", "" },
+            { "Texas dlr", "New York Texas dlr Washington Compiler 12" }
+        };
+
+        vectors = new ArrayList<>();
+        for (String[] article : articles) {
+            vectors.add(newVector(article[0], article[1]));
+        }
+    }
+
+    private FeatureVector newVector(String title, String content) {
+        return new FeatureVector(
+            stemmer.stemTokens(new Tokenizer(content).scanTokens()),
+            stemmer.stemTokens(new Tokenizer(title).scanTokens()),
+            dict
+        );
+    }
+
+    @Test
+    void TestMergeIfVectorsAreSplitThenEqualsFitOfAll() {
+        FeatureSpace all = FeatureSpace.fit(vectors);
+
+        FeatureSpace merged = FeatureSpace.fit(vectors.subList(0, 3));
+        merged.merge(FeatureSpace.fit(vectors.subList(3, vectors.size())));
+
+        assertEquals(
+            all.getWestGermanPoliticianMaxCount(),
+            merged.getWestGermanPoliticianMaxCount()
+        );
+        assertEquals(
+            all.getCanadianCityMaxFreq(), merged.getCanadianCityMaxFreq()
+        );
+    }
+
+    @Test
+    void TestGetDistanceIfQueryExceedsSpaceThenMatchesFeatureVectorDistance() {
+        FeatureSpace space = FeatureSpace.fit(vectors.subList(0, 2));
+        FeatureVector query = newVector(
+            "Kohl and Brandt",
+            "Helmut Kohl Willy Brandt Helmut Kohl Ottawa Ottawa Ottawa"
+        );
+        assertTrue(
+            query.getWestGermanPoliticianCount()
+                > space.getWestGermanPoliticianMaxCount()
+        );
+
+        for (METRIC metric : METRIC.values()) {
+            DistanceKernel kernel = DistanceKernel.compile(
+                featureFlags,
+                metric,
+                space.getWestGermanPoliticianMaxCount(),
+                space.getCanadianCityMaxFreq()
+            );
+
+            for (FeatureVector vec : vectors) {
+                assertEquals(
+                    query.getDistance(
+                        vec,
+                        space.getWestGermanPoliticianMaxCount(),
+                        space.getCanadianCityMaxFreq(),
+                        featureFlags,
+                        metric
+                    ),
+                    kernel.getDistance(query, vec),
+                    delta
+                );
+            }
+        }
+    }
+}
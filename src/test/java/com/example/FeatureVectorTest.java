@@ -1,11 +1,16 @@
 package com.example;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -16,6 +21,7 @@ import com.fasterxml.jackson.databind.JsonMappingException;
 
 public class FeatureVectorTest {
 
+    private String json;
     private Dictionary dict;
     private Stemmer stemmer;
     private final static double delta = 0.001;
@@ -24,7 +30,7 @@ public class FeatureVectorTest {
 
     @BeforeEach
     void setUp() throws JsonMappingException, JsonProcessingException {
-        String json = """
+        json = """
             {
                 "P": {
                     "west_germany": [
@@ -898,6 +904,37 @@ public class FeatureVectorTest {
         assertEquals(expected, features.getFirstCapitalizedWord());
     }
 
+    @Test
+    void TestGetFirstCapitalizedWordGramsIfWordIsLongThenSkipsTheLastTrigram() {
+        Tokenizer tokenizer = new Tokenizer("Kingdom rises");
+        FeatureVector features = new FeatureVector(
+            stemmer.stemTokens(tokenizer.scanTokens()), title, dict
+        );
+
+        String word = features.getFirstCapitalizedWord();
+        int[] expected = new int[word.length() - 3];
+        for (int i = 0; i < expected.length; ++i) {
+            expected[i] = FeatureVector.packTrigram(word, i);
+        }
+
+        assertArrayEquals(
+            SortedInts.of(expected),
+            features.getFirstCapitalizedWordGrams()
+        );
+    }
+
+    @Test
+    void TestPackTrigramIfCharactersAreNotAsciiThenDoesNotCollide() {
+        assertNotEquals(
+            FeatureVector.packTrigram("abc", 0),
+            FeatureVector.packTrigram("\u0100bc", 0)
+        );
+        assertEquals(
+            FeatureVector.packTrigram("\u0100bc", 0),
+            FeatureVector.packTrigram("x\u0100bc", 1)
+        );
+    }
+
     @Test
     void TestGetFirstCapitalizedWordIfNonFirstWordIsCapitalizedThenReturnsItsTokenValue() {
         Tokenizer tokenizer = new Tokenizer("foo Bar baz");
@@ -1361,4 +1398,233 @@ public class FeatureVectorTest {
 
         assertDoesNotThrow(() -> f1.getSimilarity(f2, 2, 2, featureFlags));
     }
+
+    @Test
+    void TestGetDistanceWithCutoffIfDistanceIsNotGreaterThenReturnsTheSameDistance() {
+        Tokenizer t1 = new Tokenizer("foo Bonn 22 Compiler A.R.C.H. toyota");
+        Tokenizer t2 = new Tokenizer("bar Paris 1337 Compilation U.W.U. yen");
+
+        FeatureVector f1 = new FeatureVector(
+            stemmer.stemTokens(t1.scanTokens()), title, dict
+        );
+        FeatureVector f2 = new FeatureVector(
+            stemmer.stemTokens(t2.scanTokens()), title, dict
+        );
+
+        for (FeatureVector.METRIC metric : FeatureVector.METRIC.values()) {
+            float expected = f1.getDistance(f2, 2, 2, featureFlags, metric);
+
+            assertEquals(
+                expected,
+                f1.getDistance(
+                    f2, 2, 2, featureFlags, metric, Float.POSITIVE_INFINITY
+                )
+            );
+            assertEquals(
+                expected,
+                f1.getDistance(f2, 2, 2, featureFlags, metric, expected)
+            );
+        }
+    }
+
+    @Test
+    void TestGetDistanceWithCutoffIfDistanceIsGreaterThenReturnsInfinity() {
+        Tokenizer t1 = new Tokenizer("foo credit agricole toyota U.K. bar");
+        Tokenizer t2 = new Tokenizer("lorem ipsum dolor");
+
+        FeatureVector f1 = new FeatureVector(
+            stemmer.stemTokens(t1.scanTokens()), title, dict
+        );
+        FeatureVector f2 = new FeatureVector(
+            stemmer.stemTokens(t2.scanTokens()), title, dict
+        );
+
+        for (FeatureVector.METRIC metric : FeatureVector.METRIC.values()) {
+            assertEquals(
+                Float.POSITIVE_INFINITY,
+                f1.getDistance(f2, 2, 2, featureFlags, metric, 0.5f)
+            );
+        }
+    }
+
+    @Test
+    void TestGetDistanceIfOnlyEnabledFeaturesAreExtractedThenReturnsTheSameDistance() {
+        Tokenizer t1 = new Tokenizer("""
+            Helmut Kohl met Toronto bankers of credit agricole and toyota
+            in Ottawa, Texas 22 A.R.C.H. stg U.K. A.R.C.H. Compiler
+        """);
+        Tokenizer t2 = new Tokenizer("""
+            Banque Paribas bar Paris Bonn 1337 Compilation U.W.U. yen
+        """);
+        List<Token> content1 = stemmer.stemTokens(t1.scanTokens());
+        List<Token> content2 = stemmer.stemTokens(t2.scanTokens());
+        List<Token> title2 = stemmer.stemTokens(
+            new Tokenizer("Kohl in Paris").scanTokens()
+        );
+
+        FeatureVector f1 = new FeatureVector(content1, title, dict);
+        FeatureVector f2 = new FeatureVector(content2, title2, dict);
+
+        List<Short> flags = new ArrayList<>();
+        for (FeatureVector.FEATURE f : FeatureVector.FEATURE.values()) {
+            flags.add(f.id);
+            flags.add((short)(featureFlags ^ f.id));
+        }
+        flags.add((short)(FeatureVector.FEATURE.FIRST_CAPITALIZED_WORD.id
+            | FeatureVector.FEATURE.MOST_FREQUENT_ACRONYM.id
+            | FeatureVector.FEATURE.TITLE.id));
+
+        for (short flag : flags) {
+            FeatureVector l1 = new FeatureVector(content1, title, dict, flag);
+            FeatureVector l2 = new FeatureVector(content2, title2, dict, flag);
+
+            for (FeatureVector.METRIC metric : FeatureVector.METRIC.values()) {
+                assertEquals(
+                    f1.getDistance(f2, 2, 2, flag, metric),
+                    l1.getDistance(l2, 2, 2, flag, metric)
+                );
+            }
+        }
+    }
+
+    @Test
+    void TestIsCapitalPresentIfCapitalsAreDisabledThenReturnsFalse() {
+        Tokenizer tokenizer = new Tokenizer("Lorem Ottawa ipsum Paris yen");
+        FeatureVector features = new FeatureVector(
+            stemmer.stemTokens(tokenizer.scanTokens()),
+            title,
+            dict,
+            (short)(featureFlags
+                ^ FeatureVector.FEATURE.CAPITALS_PRESENCE.id)
+        );
+
+        for (Article.LABEL country : Article.LABEL.values()) {
+            assertFalse(features.isCapitalPresent(country));
+        }
+        assertTrue(features.isJapaneseCurrencyPresent());
+    }
+
+    @Test
+    void TestConstructorIfCapitalsAndCurrenciesAreDisabledThenDoesNotScanThem()
+        throws JsonMappingException, JsonProcessingException {
+
+        List<BitSet> scanned = new ArrayList<>();
+        Dictionary recording = new Dictionary(json) {
+            @Override
+            public GazetteerMatches scan(
+                List<Token> tokens,
+                BitSet categories
+            ) {
+                scanned.add((BitSet)categories.clone());
+                return super.scan(tokens, categories);
+            }
+        };
+        List<Token> content = stemmer.stemTokens(new Tokenizer(
+            "Helmut Kohl met Toyota in Ottawa, Paris and Bonn about the yen"
+        ).scanTokens());
+        short flags = (short)(featureFlags
+            & ~FeatureVector.FEATURE.CAPITALS_PRESENCE.id
+            & ~FeatureVector.FEATURE.CURRENCIES_PRESENCE.id);
+
+        FeatureVector features
+            = new FeatureVector(content, title, recording, flags);
+        FeatureVector all = new FeatureVector(content, title, dict);
+
+        assertEquals(1, scanned.size());
+        for (Article.LABEL country : Article.LABEL.values()) {
+            for (String key : List.of(
+                Dictionary.CAPITALS, Dictionary.CURRENCIES
+            )) {
+                int category = recording.getCategory(key, country);
+                assertFalse(category >= 0 && scanned.get(0).get(category));
+            }
+        }
+        assertTrue(scanned.get(0).get(recording.getCategory(
+            Dictionary.POLITICIANS, Article.LABEL.WEST_GERMANY
+        )));
+        assertTrue(all.isCapitalOfCanadaPresent());
+        assertTrue(all.isJapaneseCurrencyPresent());
+
+        assertEquals(1, features.getWestGermanPoliticianCount());
+        assertEquals(
+            all.getWestGermanPoliticianCount(),
+            features.getWestGermanPoliticianCount()
+        );
+        assertEquals(all.getCanadianCityFreq(), features.getCanadianCityFreq());
+        assertEquals(
+            all.isJapaneseCompanyPresent(), features.isJapaneseCompanyPresent()
+        );
+        assertEquals(
+            all.getFirstCapitalizedWordSymbol(),
+            features.getFirstCapitalizedWordSymbol()
+        );
+    }
+
+    @Test
+    void TestConstructorIfContentHasUnknownWordsThenDoesNotInternThem() {
+        Tokenizer tokenizer = new Tokenizer(
+            "featurevectortest glorp met the uk about wuzzle, qwib and blick"
+        );
+        List<Token> content = stemmer.stemTokens(tokenizer.scanTokens());
+        int size = SymbolTable.getGlobal().size();
+
+        FeatureVector features = new FeatureVector(content, title, dict);
+
+        assertEquals(size, SymbolTable.getGlobal().size());
+        assertTrue(features.isUKAcronymPresent());
+        assertEquals(SymbolTable.UNKNOWN, content.get(1).getSymbol());
+    }
+
+    @Test
+    void TestGetDistanceAndGetSimilarityIfWarmedUpThenDoNotAllocate() {
+        assumeTrue(
+            ManagementFactory.getThreadMXBean()
+                instanceof com.sun.management.ThreadMXBean
+        );
+        com.sun.management.ThreadMXBean threads
+            = (com.sun.management.ThreadMXBean)ManagementFactory
+                .getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemoryEnabled());
+
+        Tokenizer t1 = new Tokenizer("foo Bonn 22 Compiler A.R.C.H. toyota");
+        Tokenizer t2 = new Tokenizer("bar Paris 1337 Compilation U.W.U. yen");
+        Tokenizer title1 = new Tokenizer("import data analysi busi decis");
+        Tokenizer title2 = new Tokenizer("driven strategi leverag data busi");
+
+        FeatureVector f1 = new FeatureVector(
+            stemmer.stemTokens(t1.scanTokens()), title1.scanTokens(), dict
+        );
+        FeatureVector f2 = new FeatureVector(
+            stemmer.stemTokens(t2.scanTokens()), title2.scanTokens(), dict
+        );
+
+        int calls = 100000;
+        float sink = 0.0f;
+
+        for (int i = 0; i < calls; ++i) {
+            for (FeatureVector.METRIC metric : FeatureVector.METRIC.values()) {
+                sink += f1.getDistance(f2, 2, 2, featureFlags, metric);
+            }
+            sink += f1.getSimilarity(f2, 2, 2, featureFlags);
+        }
+
+        long threadId = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < calls; ++i) {
+            sink += f1.getDistance(
+                f2, 2, 2, featureFlags, FeatureVector.METRIC.EUCLIDEAN
+            );
+            sink += f1.getDistance(
+                f2, 2, 2, featureFlags, FeatureVector.METRIC.TAXICAB
+            );
+            sink += f1.getDistance(
+                f2, 2, 2, featureFlags, FeatureVector.METRIC.CHEBYSHEV
+            );
+            sink += f1.getSimilarity(f2, 2, 2, featureFlags);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertFalse(Float.isNaN(sink));
+        assertEquals(0, allocated / calls);
+    }
 }
@@ -0,0 +1,94 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.FeatureVector.METRIC;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+public class GramsTableTest {
+
+    private final static short featureFlags = (short)0b1111111111111111;
+
+    private List<FeatureVector> vectors;
+
+    @BeforeEach
+    void setUp() throws JsonProcessingException {
+        vectors = TestVectors.random(7, 100);
+    }
+
+    @Test
+    void TestGetDistanceIfWordsAreTabledThenMatchesKernel() {
+        FeatureStore store = new FeatureStore(vectors.subList(0, 70));
+        FeatureStore queries = store.encode(vectors.subList(70, 100));
+        GramsTable table = new GramsTable(List.of(store, queries));
+
+        DistanceKernel kernel
+            = DistanceKernel.compile(featureFlags, METRIC.TAXICAB, 2, 0.7f);
+        DistanceKernel tabled = DistanceKernel.compile(
+            featureFlags, METRIC.TAXICAB, 2, 0.7f, table
+        );
+
+        for (int q = 0; q < queries.getSize(); ++q) {
+            for (int r = 0; r < store.getSize(); ++r) {
+                assertTrue(table.getDistance(
+                    queries.getFirstCapitalizedWord(q),
+                    store.getFirstCapitalizedWord(r)
+                ) != GramsTable.MISSING);
+                assertEquals(
+                    kernel.getDistance(
+                        queries, q, store, r, Float.POSITIVE_INFINITY
+                    ),
+                    tabled.getDistance(
+                        queries, q, store, r, Float.POSITIVE_INFINITY
+                    )
+                );
+            }
+        }
+    }
+
+    @Test
+    void TestGetDistanceIfTableIsFullThenFallsBackToKernel() {
+        FeatureStore store = new FeatureStore(vectors.subList(0, 70));
+        FeatureStore queries = store.encode(vectors.subList(70, 100));
+        GramsTable table = new GramsTable(List.of(store, queries), 4);
+
+        Set<Integer> words = new HashSet<>();
+        int missing = 0;
+        for (int r = 0; r < store.getSize(); ++r) {
+            int word = store.getFirstCapitalizedWord(r);
+            words.add(word);
+            if (table.getDistance(word, word) == GramsTable.MISSING) {
+                ++missing;
+            }
+        }
+        assertEquals(2, table.getWordCount());
+        assertTrue(words.size() > 2 && missing > 0);
+
+        DistanceKernel kernel
+            = DistanceKernel.compile(featureFlags, METRIC.EUCLIDEAN, 2, 0.7f);
+        DistanceKernel tabled = DistanceKernel.compile(
+            featureFlags, METRIC.EUCLIDEAN, 2, 0.7f, table
+        );
+
+        for (int q = 0; q < queries.getSize(); ++q) {
+            for (int r = 0; r < store.getSize(); ++r) {
+                assertEquals(
+                    kernel.getDistance(
+                        queries, q, store, r, Float.POSITIVE_INFINITY
+                    ),
+                    tabled.getDistance(
+                        queries, q, store, r, Float.POSITIVE_INFINITY
+                    )
+                );
+            }
+        }
+    }
+}
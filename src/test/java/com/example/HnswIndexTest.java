@@ -0,0 +1,92 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.FeatureVector.METRIC;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+public class HnswIndexTest {
+
+    private final static short featureFlags = (short)0b1111111111111111;
+
+    private List<FeatureVector> vectors;
+
+    @BeforeEach
+    void setUp() throws JsonProcessingException {
+        vectors = TestVectors.random(7, 300);
+    }
+
+    private static int[] searchLinear(
+        FeatureStore queries,
+        int q,
+        FeatureStore store,
+        DistanceKernel kernel,
+        int k
+    ) {
+        NeighbourHeap heap = new NeighbourHeap(k);
+        for (int r = 0; r < store.getSize(); ++r) {
+            heap.offer(r, kernel.getDistance(
+                queries, q, store, r, Float.POSITIVE_INFINITY
+            ));
+        }
+
+        int[] indices = new int[k];
+        heap.drainSorted(indices, null);
+        return indices;
+    }
+
+    @Test
+    void TestSearchIfBeamCoversTheWholeGraphThenMatchesLinearScan() {
+        FeatureStore store = new FeatureStore(vectors.subList(0, 250));
+        FeatureStore queries = store.encode(vectors.subList(250, 300));
+        DistanceKernel kernel
+            = DistanceKernel.compile(featureFlags, METRIC.TAXICAB, 2, 0.7f);
+        HnswIndex index = new HnswIndex(store, kernel, 8, 32, 250);
+
+        NeighbourHeap heap = new NeighbourHeap(5);
+        int[] indices = new int[5];
+        for (int q = 0; q < queries.getSize(); ++q) {
+            heap.clear();
+            index.search(queries, q, heap);
+            heap.drainSorted(indices, null);
+
+            assertArrayEquals(
+                searchLinear(queries, q, store, kernel, 5), indices
+            );
+        }
+    }
+
+    @Test
+    void TestSearchIfDefaultParametersThenRecallIsHigh() {
+        FeatureStore store = new FeatureStore(vectors.subList(0, 250));
+        FeatureStore queries = store.encode(vectors.subList(250, 300));
+        DistanceKernel kernel
+            = DistanceKernel.compile(featureFlags, METRIC.EUCLIDEAN, 2, 0.7f);
+        HnswIndex index = new HnswIndex(store, kernel, 16, 200, 64);
+
+        NeighbourHeap heap = new NeighbourHeap(5);
+        int[] indices = new int[5];
+        int found = 0;
+        for (int q = 0; q < queries.getSize(); ++q) {
+            heap.clear();
+            index.search(queries, q, heap);
+            assertEquals(5, heap.drainSorted(indices, null));
+
+            int[] exact = searchLinear(queries, q, store, kernel, 5);
+            for (int i : indices) {
+                for (int j : exact) {
+                    if (i == j) ++found;
+                }
+            }
+        }
+
+        assertTrue(found >= 0.9 * 5 * queries.getSize());
+    }
+}
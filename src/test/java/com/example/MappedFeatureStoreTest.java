@@ -0,0 +1,118 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.FeatureVector.METRIC;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+public class MappedFeatureStoreTest {
+
+    private final static short featureFlags = (short)0b1111111111111111;
+
+    private List<FeatureVector> vectors;
+
+    @BeforeEach
+    void setUp() throws JsonProcessingException {
+        vectors = TestVectors.random(7, 100);
+    }
+
+    private static void assertSameDistances(
+        FeatureStore expectedQueries,
+        FeatureStore expectedStore,
+        FeatureStore actualQueries,
+        FeatureStore actualStore
+    ) {
+        for (METRIC metric : METRIC.values()) {
+            DistanceKernel kernel
+                = DistanceKernel.compile(featureFlags, metric, 2, 0.7f);
+
+            for (int q = 0; q < expectedQueries.getSize(); ++q) {
+                for (int r = 0; r < expectedStore.getSize(); ++r) {
+                    assertEquals(
+                        kernel.getDistance(
+                            expectedQueries, q, expectedStore, r,
+                            Float.POSITIVE_INFINITY
+                        ),
+                        kernel.getDistance(
+                            actualQueries, q, actualStore, r,
+                            Float.POSITIVE_INFINITY
+                        )
+                    );
+                }
+            }
+        }
+    }
+
+    @Test
+    void TestGetDistanceIfStoreIsMappedThenMatchesHeapStore(
+        @TempDir File dir
+    ) throws IOException {
+        List<FeatureVector> training = vectors.subList(0, 70);
+        List<FeatureVector> testing = vectors.subList(70, 100);
+
+        File file = new File(dir, "store.bin");
+        MappedFeatureStore.write(
+            new Model(training, 3, 0.5f, featureFlags, List.of()), file
+        );
+        MappedFeatureStore mapped = new MappedFeatureStore(file);
+
+        assertEquals(training.size(), mapped.getSize());
+        assertEquals(3, mapped.getWestGermanPoliticianMaxCount());
+        assertEquals(0.5f, mapped.getCanadianCityMaxFreq());
+        assertEquals(featureFlags, mapped.getFeatureFlags());
+
+        FeatureStore store = new FeatureStore(training);
+        for (int r = 0; r < store.getSize(); ++r) {
+            assertEquals(store.getLabel(r), mapped.getLabel(r));
+        }
+
+        assertSameDistances(
+            store.encode(testing), store, mapped.encode(testing), mapped
+        );
+        assertSameDistances(store, store, mapped, mapped);
+    }
+
+    @Test
+    void TestConstructorIfNotAStoreFileThenThrows(
+        @TempDir File dir
+    ) throws IOException {
+        File file = new File(dir, "store.bin");
+        Files.write(file.toPath(), new byte[64]);
+
+        assertThrows(IOException.class, () -> new MappedFeatureStore(file));
+    }
+
+    @Test
+    void TestConstructorIfFileIsTruncatedThenThrows(
+        @TempDir File dir
+    ) throws IOException {
+        File file = new File(dir, "store.bin");
+        MappedFeatureStore.write(
+            new Model(vectors, 3, 0.5f, featureFlags, List.of()), file
+        );
+        byte[] bytes = Files.readAllBytes(file.toPath());
+
+        // Cut in the strings, in the pool and in the records.
+        for (int length : new int[] {
+            bytes.length - 100,
+            bytes.length / 2,
+            MappedFeatureStore.HEADER_SIZE + 10
+        }) {
+            Files.write(file.toPath(), Arrays.copyOf(bytes, length));
+            assertThrows(
+                IOException.class, () -> new MappedFeatureStore(file)
+            );
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.FeatureVector.METRIC;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+public class ModelReaderTest {
+
+    private final static short featureFlags = (short)0b1111111111111111;
+
+    private List<FeatureVector> vectors;
+
+    @BeforeEach
+    void setUp() throws JsonProcessingException {
+        vectors = TestVectors.random(7, 100);
+    }
+
+    private Model createModel() {
+        return new Model(
+            vectors,
+            3,
+            0.25f,
+            featureFlags,
+            List.of(Article.LABEL.UK, Article.LABEL.JAPAN)
+        );
+    }
+
+    @Test
+    void TestReadIfWrittenByModelWriterThenRestoresTheModel(
+        @TempDir File dir
+    ) throws IOException {
+        File file = new File(dir, "model.bin");
+        ModelWriter.write(createModel(), file);
+
+        Model model = ModelReader.read(file);
+
+        assertEquals(3, model.getWestGermanPoliticianMaxCount());
+        assertEquals(0.25f, model.getCanadianCityMaxFreq());
+        assertEquals(featureFlags, model.getFeatureFlags());
+        assertEquals(
+            List.of(Article.LABEL.UK, Article.LABEL.JAPAN),
+            model.getIgnoredLabels()
+        );
+        assertEquals(vectors.size(), model.getVectors().size());
+
+        FeatureStore expected = new FeatureStore(vectors);
+        FeatureStore actual = new FeatureStore(model.getVectors());
+        for (METRIC metric : METRIC.values()) {
+            DistanceKernel kernel
+                = DistanceKernel.compile(featureFlags, metric, 2, 0.7f);
+
+            for (int q = 0; q < vectors.size(); q += 7) {
+                for (int r = 0; r < vectors.size(); ++r) {
+                    assertEquals(
+                        kernel.getDistance(
+                            expected, q, expected, r, Float.POSITIVE_INFINITY
+                        ),
+                        kernel.getDistance(
+                            actual, q, actual, r, Float.POSITIVE_INFINITY
+                        )
+                    );
+                }
+            }
+        }
+
+        for (int i = 0; i < vectors.size(); ++i) {
+            FeatureVector v = vectors.get(i);
+            FeatureVector w = model.getVectors().get(i);
+
+            assertEquals(v.getLabel(), w.getLabel());
+            assertEquals(v.getFlags(), w.getFlags());
+            assertEquals(
+                v.getFirstCapitalizedWord(), w.getFirstCapitalizedWord()
+            );
+            assertArrayEquals(
+                v.getFirstCapitalizedWordGrams(),
+                w.getFirstCapitalizedWordGrams()
+            );
+            assertArrayEquals(v.getTitleSymbols(), w.getTitleSymbols());
+            for (Article.LABEL country : Article.LABEL.values()) {
+                assertEquals(
+                    v.isCapitalPresent(country), w.isCapitalPresent(country)
+                );
+                assertEquals(
+                    v.isCurrencyPresent(country), w.isCurrencyPresent(country)
+                );
+            }
+        }
+    }
+
+    @Test
+    void TestFromBytesIfAByteIsCorruptedThenThrows() throws IOException {
+        byte[] bytes = ModelWriter.toBytes(createModel());
+        bytes[bytes.length / 2] ^= 0x10;
+
+        assertThrows(IOException.class, () -> ModelReader.fromBytes(bytes));
+    }
+
+    @Test
+    void TestFromBytesIfTruncatedThenThrows() throws IOException {
+        byte[] bytes = ModelWriter.toBytes(createModel());
+
+        assertThrows(
+            IOException.class,
+            () -> ModelReader.fromBytes(
+                Arrays.copyOf(bytes, bytes.length - 9)
+            )
+        );
+    }
+}
@@ -0,0 +1,79 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class NeighbourHeapTest {
+
+    @Test
+    void TestGetWorstDistanceIfNotFullThenReturnsInfinity() {
+        NeighbourHeap heap = new NeighbourHeap(3);
+        heap.offer(0, 0.5f);
+        heap.offer(1, 0.25f);
+
+        assertEquals(Float.POSITIVE_INFINITY, heap.getWorstDistance());
+    }
+
+    @Test
+    void TestGetWorstDistanceIfFullThenReturnsTheFarthestNeighbour() {
+        NeighbourHeap heap = new NeighbourHeap(2);
+        heap.offer(0, 0.5f);
+        heap.offer(1, 0.25f);
+        heap.offer(2, 0.75f);
+
+        assertEquals(0.5f, heap.getWorstDistance());
+    }
+
+    @Test
+    void TestOfferIfEqualDistanceThenKeepsTheLowerIndex() {
+        NeighbourHeap heap = new NeighbourHeap(1);
+        heap.offer(4, 1.0f);
+
+        assertFalse(heap.offer(7, 1.0f));
+        assertTrue(heap.offer(2, 1.0f));
+
+        int[] indices = new int[1];
+        heap.drainSorted(indices, null);
+        assertArrayEquals(new int[] { 2 }, indices);
+    }
+
+    @Test
+    void TestDrainSortedIfRandomDistancesThenReturnsTheKNearestInOrder() {
+        Random rnd = new Random(1337);
+        int n = 1000;
+        int K = 10;
+
+        float[] distances = new float[n];
+        NeighbourHeap heap = new NeighbourHeap(K);
+        for (int i = 0; i < n; ++i) {
+            distances[i] = rnd.nextInt(100) / 10.0f;
+            heap.offer(i, distances[i]);
+        }
+
+        Integer[] expected = new Integer[n];
+        for (int i = 0; i < n; ++i) {
+            expected[i] = i;
+        }
+        Arrays.sort(
+            expected,
+            (a, b) -> Float.compare(distances[a], distances[b])
+        );
+
+        int[] indices = new int[K];
+        float[] sorted = new float[K];
+        assertEquals(K, heap.drainSorted(indices, sorted));
+        assertEquals(0, heap.size());
+
+        for (int i = 0; i < K; ++i) {
+            assertEquals((int)expected[i], indices[i]);
+            assertEquals(distances[expected[i]], sorted[i]);
+        }
+    }
+}
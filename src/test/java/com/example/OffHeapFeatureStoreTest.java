@@ -0,0 +1,122 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.FeatureVector.METRIC;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+public class OffHeapFeatureStoreTest {
+
+    private final static short featureFlags = (short)0b1111111111111111;
+
+    private List<FeatureVector> vectors;
+
+    @BeforeEach
+    void setUp() throws JsonProcessingException {
+        vectors = TestVectors.random(7, 100);
+    }
+
+    private static void assertSameDistances(
+        FeatureStore expectedQueries,
+        FeatureStore expectedStore,
+        FeatureStore actualQueries,
+        FeatureStore actualStore
+    ) {
+        for (METRIC metric : METRIC.values()) {
+            DistanceKernel kernel
+                = DistanceKernel.compile(featureFlags, metric, 2, 0.7f);
+
+            for (int q = 0; q < expectedQueries.getSize(); ++q) {
+                for (int r = 0; r < expectedStore.getSize(); ++r) {
+                    assertEquals(
+                        kernel.getDistance(
+                            expectedQueries, q, expectedStore, r,
+                            Float.POSITIVE_INFINITY
+                        ),
+                        kernel.getDistance(
+                            actualQueries, q, actualStore, r,
+                            Float.POSITIVE_INFINITY
+                        )
+                    );
+                }
+            }
+        }
+    }
+
+    @Test
+    void TestGetDistanceIfStoreIsOffHeapThenMatchesHeapStore() {
+        List<FeatureVector> training = vectors.subList(0, 70);
+        List<FeatureVector> testing = vectors.subList(70, 100);
+
+        OffHeapFeatureStore offHeap = new OffHeapFeatureStore(training);
+        FeatureStore store = new FeatureStore(training);
+
+        assertEquals(store.getSize(), offHeap.getSize());
+        for (int r = 0; r < store.getSize(); ++r) {
+            assertEquals(store.getLabel(r), offHeap.getLabel(r));
+        }
+
+        assertSameDistances(
+            store.encode(testing), store, offHeap.encode(testing), offHeap
+        );
+        assertSameDistances(store, store, offHeap, offHeap);
+    }
+
+    @Test
+    void TestAppendIfCapacityIsExceededThenKeepsEarlierRows() {
+        OffHeapFeatureStore offHeap = new OffHeapFeatureStore(1);
+        for (FeatureVector vec : vectors) {
+            offHeap.append(vec);
+        }
+
+        FeatureStore store = new FeatureStore(vectors);
+        assertEquals(vectors.size(), offHeap.getSize());
+        assertSameDistances(store, store, offHeap, offHeap);
+    }
+
+    @Test
+    void TestAppendIfRowsSpanSeveralChunksThenKeepsEveryRow() {
+        OffHeapFeatureStore offHeap = new OffHeapFeatureStore(1, 2, 6);
+        for (FeatureVector vec : vectors) {
+            offHeap.append(vec);
+        }
+
+        FeatureStore store = new FeatureStore(vectors);
+        assertEquals(vectors.size(), offHeap.getSize());
+        for (int r = 0; r < store.getSize(); ++r) {
+            assertEquals(store.getLabel(r), offHeap.getLabel(r));
+        }
+        assertSameDistances(store, store, offHeap, offHeap);
+    }
+
+    @Test
+    void TestNewIfCapacityExceedsDirectMemoryThenThrows() {
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new OffHeapFeatureStore(Integer.MAX_VALUE)
+        );
+    }
+
+    @Test
+    void TestAppendIfStoreIsClosedThenThrows() {
+        OffHeapFeatureStore offHeap = new OffHeapFeatureStore(vectors);
+        offHeap.close();
+        offHeap.close();
+
+        assertEquals(0, offHeap.getSize());
+        assertThrows(
+            IllegalStateException.class, () -> offHeap.append(vectors.get(0))
+        );
+        assertThrows(IllegalStateException.class, () -> offHeap.getLabel(0));
+        assertThrows(
+            IllegalStateException.class,
+            () -> offHeap.countCommonGrams(0, offHeap, 0)
+        );
+    }
+}
@@ -0,0 +1,50 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class SortedIntsTest {
+
+    private static int[] randomSet(Random rnd, int size, int bound) {
+        int[] values = new int[size];
+        for (int i = 0; i < size; ++i) {
+            values[i] = rnd.nextInt(bound);
+        }
+
+        return SortedInts.of(values);
+    }
+
+    @Test
+    void TestOfIfValuesRepeatThenReturnsSortedDistinctValues() {
+        assertArrayEquals(
+            new int[] { -2, 3, 5, 7 },
+            SortedInts.of(new int[] { 7, 3, 5, 3, -2, 7 })
+        );
+        assertArrayEquals(new int[0], SortedInts.of(new int[0]));
+    }
+
+    @Test
+    void TestCountCommonIfSizesAreAlikeOrNotThenCountsTheIntersection() {
+        Random rnd = new Random(42);
+
+        for (int n = 0; n < 500; ++n) {
+            int[] a = randomSet(rnd, rnd.nextInt(8), 64);
+            int[] b = randomSet(rnd, rnd.nextInt(300), 512);
+
+            Set<Integer> common = new HashSet<>();
+            for (int x : a) common.add(x);
+            Set<Integer> other = new HashSet<>();
+            for (int y : b) other.add(y);
+            common.retainAll(other);
+
+            assertEquals(common.size(), SortedInts.countCommon(a, b));
+            assertEquals(common.size(), SortedInts.countCommon(b, a));
+        }
+    }
+}
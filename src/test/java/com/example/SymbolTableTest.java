@@ -0,0 +1,81 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+public class SymbolTableTest {
+
+    @Test
+    void TestInternIfValueIsRepeatedThenReturnsTheSameId() {
+        SymbolTable table = new SymbolTable();
+
+        int id = table.intern("dlr");
+        assertNotEquals(id, table.intern("yen"));
+        assertEquals(id, table.intern(new String("dlr")));
+        assertEquals("dlr", table.getValue(id));
+    }
+
+    @Test
+    void TestInternIfValuesAreNewThenIdsAreDense() {
+        SymbolTable table = new SymbolTable();
+
+        assertEquals(0, table.intern("mark"));
+        assertEquals(1, table.intern("franc"));
+        assertEquals(2, table.intern("stg"));
+        assertEquals(3, table.size());
+    }
+
+    @Test
+    void TestGetSymbolIfTokensHaveTheSameValueThenSymbolsAreEqual() {
+        Token t1 = new Token(Token.Type.WORD, "trade");
+        Token t2 = new Token(Token.Type.CAPITALIZED_WORD, "trade");
+
+        assertEquals(t1.getSymbol(), t2.getSymbol());
+        assertEquals(SymbolTable.getGlobal().intern("trade"), t1.getSymbol());
+    }
+
+    @Test
+    void TestLookupIfValueIsNotInternedThenReturnsUnknownAndDoesNotAddIt() {
+        SymbolTable table = new SymbolTable();
+        int id = table.intern("mark");
+
+        assertEquals(SymbolTable.UNKNOWN, table.lookup("franc"));
+        assertEquals(1, table.size());
+        assertEquals(id, table.lookup(new String("mark")));
+    }
+
+    @Test
+    void TestGetSymbolIfValueIsNotInternedThenReturnsUnknownUntilItIs() {
+        SymbolTable global = SymbolTable.getGlobal();
+        Token token = new Token(Token.Type.WORD, "symboltabletest-unseen");
+        int size = global.size();
+
+        assertEquals(SymbolTable.UNKNOWN, token.getSymbol());
+        assertEquals(size, global.size());
+
+        int id = new Token(Token.Type.WORD, token.getValue()).internSymbol();
+        assertEquals(id, token.getSymbol());
+        assertEquals(size + 1, global.size());
+    }
+
+    @Test
+    void TestInternIfCalledConcurrentlyThenEachValueGetsOneDenseId() {
+        SymbolTable table = new SymbolTable();
+        int values = 5000;
+
+        int[] ids = IntStream.range(0, 8 * values)
+            .parallel()
+            .map(i -> table.intern("v" + (i % values)))
+            .toArray();
+
+        assertEquals(values, table.size());
+        for (int i = 0; i < ids.length; ++i) {
+            assertEquals(ids[i % values], ids[i]);
+            assertEquals("v" + (i % values), table.getValue(ids[i]));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+// Random labelled feature vectors for the tests of the indices and the
+// stores, made of words that hit every gazetteer of a small dictionary,
+// numbers, acronyms and a non-ASCII word.
+class TestVectors {
+
+    private final static String[] words = {
+        "Helmut", "Kohl", "Zürich", "Toronto", "Ottawa", "Credit", "Lyonnais",
+        "Toyota", "Sony", "Texas", "Bonn", "Paris", "London", "Tokyo",
+        "mark", "dlr", "yen", "stg", "franc", "EEC", "GATT", "U.K.",
+        "12", "3.5", "1987", "trade", "bank", "talks", "rose", "fell"
+    };
+
+    private final static String json = """
+        {
+            "P": { "west_germany": [ "Helmut Kohl" ] },
+            "W": { "canada": [ "Toronto", "Ottawa" ] },
+            "O": { "france": [ "Credit Lyonnais" ] },
+            "C": { "japan": [ "Toyota", "Sony" ] },
+            "H": { "usa": [ "Texas" ] },
+            "s": {
+                "west_germany": [ "Bonn" ],
+                "usa": [ "Washington" ],
+                "france": [ "Paris" ],
+                "uk": [ "London" ],
+                "canada": [ "Ottawa" ],
+                "japan": [ "Tokyo" ]
+            },
+            "m": {
+                "west_germany": [ "mark" ],
+                "usa": [ "dlr" ],
+                "france": [ "franc" ],
+                "uk": [ "stg" ],
+                "canada": [ "canadian dlr" ],
+                "japan": [ "yen" ]
+            }
+        }
+    """;
+
+    // `count` vectors of 12 content and 3 title words, labelled with the
+    // countries in turn.
+    static List<FeatureVector> random(
+        long seed,
+        int count
+    ) throws JsonProcessingException {
+        Dictionary dict = new Dictionary(json);
+        Stemmer stemmer = new Stemmer();
+        Random rnd = new Random(seed);
+
+        List<FeatureVector> vectors = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            vectors.add(new FeatureVector(
+                stemmer.stemTokens(
+                    new Tokenizer(randomText(rnd, 12)).scanTokens()
+                ),
+                stemmer.stemTokens(
+                    new Tokenizer(randomText(rnd, 3)).scanTokens()
+                ),
+                dict,
+                Optional.of(Article.LABEL.values()[i % 6])
+            ));
+        }
+
+        return vectors;
+    }
+
+    private static String randomText(Random rnd, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; ++i) {
+            sb.append(words[rnd.nextInt(words.length)]).append(' ');
+        }
+
+        return sb.toString();
+    }
+}
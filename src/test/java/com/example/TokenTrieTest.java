@@ -0,0 +1,157 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class TokenTrieTest {
+
+    private static List<Token> tokens(String text) {
+        return new Tokenizer(text).scanTokens();
+    }
+
+    // The linear scan the trie replaces.
+    private static int scan(
+        List<List<Token>> entries,
+        List<Token> input,
+        int pos
+    ) {
+        if (pos < 0) {
+            return 0;
+        }
+
+        for (List<Token> entry : entries) {
+            if (entry.size() > input.size() - pos) {
+                continue;
+            }
+
+            boolean foundMismatch = false;
+            for (int i = 0; i < entry.size(); ++i) {
+                int input_part = input.get(pos + i).getSymbol();
+                int entry_part = entry.get(i).getSymbol();
+
+                if (input_part != entry_part) {
+                    foundMismatch = true;
+                    break;
+                }
+            }
+
+            if (!foundMismatch) {
+                return entry.size();
+            }
+        }
+
+        return 0;
+    }
+
+    @Test
+    void TestMatchIfShorterEntryComesFirstThenReturnsItsLength() {
+        TokenTrie trie = new TokenTrie(List.of(List.of(
+            tokens("New"), tokens("New York"), tokens("York")
+        )));
+
+        assertEquals(1, trie.match(tokens("New York City"), 0, 0));
+        assertEquals(1, trie.match(tokens("New York City"), 1, 0));
+        assertEquals(0, trie.match(tokens("New York City"), 2, 0));
+    }
+
+    @Test
+    void TestMatchIfLongerEntryComesFirstThenReturnsItsLength() {
+        TokenTrie trie = new TokenTrie(List.of(List.of(
+            tokens("Quebec City"), tokens("Quebec")
+        )));
+
+        assertEquals(2, trie.match(tokens("in Quebec City"), 1, 0));
+        assertEquals(1, trie.match(tokens("in Quebec"), 1, 0));
+        assertEquals(0, trie.match(tokens("in Quebec"), -1, 0));
+        assertEquals(0, trie.match(tokens("in Quebec"), 2, 0));
+    }
+
+    @Test
+    void TestMatchIfEntriesAreRandomThenMatchesLinearScan() {
+        String[] words = { "a", "b", "c", "d" };
+        Random rnd = new Random(11);
+
+        for (int round = 0; round < 50; ++round) {
+            List<List<Token>> entries = new ArrayList<>();
+            for (int e = 0; e < 20; ++e) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = rnd.nextInt(4); i >= 0; --i) {
+                    sb.append(words[rnd.nextInt(words.length)]).append(' ');
+                }
+                entries.add(tokens(sb.toString()));
+            }
+            entries.add(rnd.nextInt(entries.size()), List.of());
+
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 30; ++i) {
+                sb.append(words[rnd.nextInt(words.length)]).append(' ');
+            }
+            List<Token> input = tokens(sb.toString());
+
+            TokenTrie trie = new TokenTrie(List.of(entries));
+            for (int pos = -1; pos <= input.size() + 1; ++pos) {
+                assertEquals(
+                    scan(entries, input, pos), trie.match(input, pos, 0)
+                );
+            }
+        }
+    }
+
+    @Test
+    void TestMatchAllIfSetsAreRandomThenReportsEveryMatchingSet() {
+        String[] words = { "a", "b", "c" };
+        Random rnd = new Random(13);
+
+        for (int round = 0; round < 20; ++round) {
+            List<List<List<Token>>> sets = new ArrayList<>();
+            for (int set = 0; set < 12; ++set) {
+                List<List<Token>> entries = new ArrayList<>();
+                for (int e = rnd.nextInt(5); e >= 0; --e) {
+                    StringBuilder sb = new StringBuilder();
+                    for (int i = rnd.nextInt(3); i >= 0; --i) {
+                        sb.append(words[rnd.nextInt(words.length)]);
+                        sb.append(' ');
+                    }
+                    entries.add(tokens(sb.toString()));
+                }
+                if (rnd.nextInt(6) == 0) {
+                    entries.add(rnd.nextInt(entries.size()), List.of());
+                }
+                sets.add(entries);
+            }
+
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 20; ++i) {
+                sb.append(words[rnd.nextInt(words.length)]).append(' ');
+            }
+            List<Token> input = tokens(sb.toString());
+
+            TokenTrie trie = new TokenTrie(sets);
+            int[] firsts = new int[sets.size()];
+            int[] found = new int[sets.size()];
+            int[] lengths = new int[sets.size()];
+
+            for (int pos = -1; pos <= input.size(); ++pos) {
+                int[] expected = new int[sets.size()];
+                for (int set = 0; set < sets.size(); ++set) {
+                    expected[set] = trie.match(input, pos, set);
+                }
+
+                int[] actual = new int[sets.size()];
+                int n = trie.matchAll(input, pos, firsts, found, lengths);
+                for (int k = 0; k < n; ++k) {
+                    actual[found[k]] = lengths[k];
+                }
+
+                assertArrayEquals(expected, actual);
+                assertArrayEquals(new int[sets.size()], firsts);
+            }
+        }
+    }
+}
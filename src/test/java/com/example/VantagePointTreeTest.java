@@ -0,0 +1,75 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.FeatureVector.FEATURE;
+import com.example.FeatureVector.METRIC;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+public class VantagePointTreeTest {
+
+    private final static short featureFlags = (short)(0b1111111111111111
+        ^ FEATURE.FIRST_CAPITALIZED_WORD.id);
+
+    private List<FeatureVector> vectors;
+
+    @BeforeEach
+    void setUp() throws JsonProcessingException {
+        vectors = TestVectors.random(7, 300);
+    }
+
+    @Test
+    void TestSearchIfDistanceIsMetricThenMatchesLinearScan() {
+        FeatureStore store = new FeatureStore(vectors.subList(0, 250));
+        FeatureStore queries = store.encode(vectors.subList(250, 300));
+
+        for (METRIC metric : METRIC.values()) {
+            DistanceKernel kernel
+                = DistanceKernel.compile(featureFlags, metric, 2, 0.7f);
+            VantagePointTree tree = new VantagePointTree(store, kernel);
+            assertTrue(tree.isMetric());
+
+            for (int k : new int[] { 1, 5, 20 }) {
+                NeighbourHeap expected = new NeighbourHeap(k);
+                NeighbourHeap actual = new NeighbourHeap(k);
+
+                for (int q = 0; q < queries.getSize(); ++q) {
+                    expected.clear();
+                    for (int r = 0; r < store.getSize(); ++r) {
+                        expected.offer(r, kernel.getDistance(
+                            queries, q, store, r, Float.POSITIVE_INFINITY
+                        ));
+                    }
+
+                    actual.clear();
+                    tree.search(queries, q, actual);
+
+                    int[] expectedIndices = new int[k];
+                    int[] actualIndices = new int[k];
+                    expected.drainSorted(expectedIndices, null);
+                    actual.drainSorted(actualIndices, null);
+
+                    assertArrayEquals(expectedIndices, actualIndices);
+                }
+            }
+        }
+    }
+
+    @Test
+    void TestIsMetricIfFirstCapitalizedWordIsEnabledThenReturnsFalse() {
+        DistanceKernel kernel = DistanceKernel.compile(
+            (short)0b1111111111111111, METRIC.EUCLIDEAN, 2, 0.7f
+        );
+
+        assertFalse(
+            new VantagePointTree(new FeatureStore(vectors), kernel).isMetric()
+        );
+    }
+}